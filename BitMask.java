@@ -0,0 +1,285 @@
+/**Bit-packed binary mask. Every row is stored in (width+63)/64 long words, pixel x of a row being bit x%64 of word x/64,
+ * so a mask uses 8 times less memory than a byte image.
+ * The pixels of the whole mask are counted word by word with Long.bitCount (cardinality, fraction, countDifferences).
+ * The column counts of the kernels (countThreshold) are updated with the pixels set only, found word by word, so the
+ * empty background words cost nothing; the window of every pixel is then summed from the column counts, pixel by pixel.
+ * @author Jacques Boisvert
+ */
+public class BitMask {
+
+	private final int width;
+	private final int height;
+	private final int wordsPerRow;
+	private final long [] words;
+
+	/**Create an empty mask.
+	 *
+	 * @param width - Mask width
+	 * @param height - Mask height
+	 */
+	public BitMask(int width,int height){
+		this.width = width;
+		this.height = height;
+		this.wordsPerRow = (width + 63) >>> 6;
+		this.words = new long [wordsPerRow*height];
+	}
+
+	/**Function threshold returns the mask of the pixels higher than thresh.
+	 *
+	 * @param pix - 32 bits float pixel array, not modified
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param thresh - threshold level
+	 * @return mask where pixel x,y is set if pix[x,y] > thresh
+	 */
+	public static BitMask threshold(float [] pix,int width,int height,double thresh){
+		if(pix.length != width*height)
+			throw new DimensionMismatchException(pix.length,width*height);
+		BitMask mask = new BitMask(width,height);
+		Parallel.forBands(height,(start,end) -> {
+			for(int row = start; row < end;row++){
+				int offset = row*width;
+				int wordOffset = row*mask.wordsPerRow;
+				for(int w = 0; w < mask.wordsPerRow;w++){
+					int first = w << 6;
+					int last = Math.min(first+64,width);
+					long word = 0;
+					for(int col = first; col < last;col++){
+						if(pix[offset+col] > thresh)
+							word |= 1L << col;//The shift only uses the 6 lowest bits of col.
+					}
+					mask.words[wordOffset+w] = word;
+				}
+			}
+		});
+		return mask;
+	}
+
+	/**Function threshold returns the mask of the pixels of an integer image higher than thresh.
+	 * An integer is higher than thresh if it is higher than floor(thresh), so the pixels are compared with an integer.
+	 * @param pix - integer pixel array, not modified
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param thresh - threshold level
+	 * @return mask where pixel x,y is set if pix[x,y] > thresh
+	 */
+	public static BitMask threshold(int [] pix,int width,int height,double thresh){
+		if(pix.length != width*height)
+			throw new DimensionMismatchException(pix.length,width*height);
+		BitMask mask = new BitMask(width,height);
+		if(thresh >= Integer.MAX_VALUE)
+			return mask;
+		int intThresh = (int)Math.max(Math.floor(thresh),Integer.MIN_VALUE);
+		Parallel.forBands(height,(start,end) -> {
+			for(int row = start; row < end;row++){
+				int offset = row*width;
+				int wordOffset = row*mask.wordsPerRow;
+				for(int w = 0; w < mask.wordsPerRow;w++){
+					int first = w << 6;
+					int last = Math.min(first+64,width);
+					long word = 0;
+					for(int col = first; col < last;col++){
+						if(pix[offset+col] > intThresh)
+							word |= 1L << col;//The shift only uses the 6 lowest bits of col.
+					}
+					mask.words[wordOffset+w] = word;
+				}
+			}
+		});
+		return mask;
+	}
+
+	/**Function toBytes returns the binary byte image of the mask.
+	 *
+	 * @return bytePix - binary pixel array with value 0|255
+	 */
+	public byte [] toBytes(){
+		byte [] bytePix = new byte [width*height];
+		Parallel.forBands(height,(start,end) -> {
+			for(int row = start; row < end;row++){
+				int offset = row*width;
+				int wordOffset = row*wordsPerRow;
+				for(int col = 0; col < width;col++){
+					if((words[wordOffset + (col >>> 6)] & (1L << col)) != 0)
+						bytePix[offset+col] = (byte) 255;
+				}
+			}
+		});
+		return bytePix;
+	}
+
+	public int getWidth(){
+		return width;
+	}
+
+	public int getHeight(){
+		return height;
+	}
+
+	public boolean get(int x,int y){
+		return (words[y*wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+	}
+
+	public void set(int x,int y){
+		words[y*wordsPerRow + (x >>> 6)] |= 1L << x;
+	}
+
+	/**Function setWord replaces the word of the row y containing the column x, pixel x being bit x%64 of word.
+	 *
+	 */
+	void setWord(int x,int y,long word){
+		words[y*wordsPerRow + (x >>> 6)] = word;
+	}
+
+	/**Return the number of pixels set in the mask.
+	 *
+	 */
+	public long cardinality(){
+		long count = 0;
+		for(long word : words)
+			count += Long.bitCount(word);
+		return count;
+	}
+
+	/**Function countDifferences returns the number of pixels set in only one of the masks.
+	 *
+	 * @param mask - other mask of the same size
+	 * @return number of different pixels
+	 */
+	public long countDifferences(BitMask mask){
+		if(mask.width != width || mask.height != height)
+			throw new DimensionMismatchException(mask.width*mask.height,width*height);
+		long count = 0;
+		for(int i = 0; i < words.length;i++)
+			count += Long.bitCount(words[i] ^ mask.words[i]);
+		return count;
+	}
+
+	/**Return the fraction of the pixels set in the mask (foreground fraction).
+	 *
+	 */
+	public double fraction(){
+		return (double)cardinality() / ((long)width*height);
+	}
+
+	/**Function countThreshold returns the mask of the kernels containing enough pixels set.
+	 * Pixel x,y is set if count * filterWidth*filterHeight > idx * (number of pixels of the kernel inside the mask),
+	 * which is the same as mean > idx / (filterWidth*filterHeight) without the float rounding.
+	 * The count of every column of the kernel is updated row by row with the pixels set in the rows entering
+	 * and leaving the kernel, which are found word by word (Long.numberOfTrailingZeros), so the empty words
+	 * of the background cost nothing. The column counts are then summed along the row with a running sum, one
+	 * pixel at a time (see KernelThreshold).
+	 * @param filterWidth - Filter width
+	 * @param filterHeight - Filter height
+	 * @param idx - Number of pixels set in a filterWidth x filterHeight kernel to exceed.
+	 * @return mask of the kernels
+	 */
+	public BitMask countThreshold(int filterWidth,int filterHeight,int idx){
+		BitMask result = new BitMask(width,height);
+		int radiusY = filterHeight/2;
+		KernelThreshold kernel = new KernelThreshold(width,height,filterWidth,filterHeight,idx);
+		//Counts are integers, so every band starts its own column counts and the result doesn't depend on the bands.
+		Parallel.forBands(height,Math.max(Parallel.DEFAULT_MIN_BAND,filterHeight),(start,end) -> {
+			int [] columnCounts = new int [width];
+			for(int row = Math.max(start-radiusY,0); row < Math.min(start+radiusY,height-1)+1;row++)
+				addRow(columnCounts,row,1);
+			for(int row = start; row < end;row++){
+				if(row > start){
+					if(row-radiusY-1 >= 0)
+						addRow(columnCounts,row-radiusY-1,-1);
+					if(row+radiusY < height)
+						addRow(columnCounts,row+radiusY,1);
+				}
+				kernel.row(columnCounts,row,0,width,result.words,row*wordsPerRow);
+			}
+		});
+		return result;
+	}
+
+	/**Function addRow adds increment to the count of every column whose pixel is set in a row.
+	 *
+	 */
+	private void addRow(int [] columnCounts,int row,int increment){
+		int wordOffset = row*wordsPerRow;
+		for(int w = 0; w < wordsPerRow;w++){
+			long word = words[wordOffset+w];
+			while(word != 0){
+				columnCounts[(w << 6) + Long.numberOfTrailingZeros(word)] += increment;
+				word &= word - 1;//Clear the lowest bit set.
+			}
+		}
+	}
+
+	/**Threshold of the kernels of a row from the counts of their columns, with the test of countThreshold.
+	 * The row by row and tile by tile counts (StreamSegmenter, TiledSegmenter) keep their own column counts, but use
+	 * this sum and this test, so that every path gives the same mask. Not modified after creation, shared by the threads.
+	 */
+	static final class KernelThreshold{
+		private final int width;
+		private final int height;
+		private final int radiusX;
+		private final int radiusY;
+		private final long maskSize;
+		private final int idx;
+		private final int [] countsX;
+
+		/**Create the threshold of the kernels of an image.
+		 *
+		 * @param width - Image width
+		 * @param height - Image height
+		 * @param filterWidth - Filter width
+		 * @param filterHeight - Filter height
+		 * @param idx - Number of pixels set in a filterWidth x filterHeight kernel to exceed.
+		 */
+		KernelThreshold(int width,int height,int filterWidth,int filterHeight,int idx){
+			this.width = width;
+			this.height = height;
+			radiusX = filterWidth/2;
+			radiusY = filterHeight/2;
+			maskSize = (long)filterWidth*filterHeight;
+			this.idx = idx;
+			countsX = BoxFilter.windowCounts(width,radiusX);
+		}
+
+		/**Function firstColumn returns the first column of the counts of the pixels [x0,x1[ of a row.
+		 *
+		 */
+		int firstColumn(int x0){
+			return Math.max(0,x0-radiusX);
+		}
+
+		/**Function row tests the kernels of the pixels [x0,x1[ of a row : pixel x is set if
+		 * count * filterWidth*filterHeight > idx * (number of pixels of the kernel inside the image).
+		 * The counts of the columns are summed along the row with a running sum.
+		 * @param columnCounts - number of pixels set in the kernel rows of every column, column x at index x-firstColumn(x0),
+		 * 			from firstColumn(x0) to min(width,x1+filterWidth/2)
+		 * @param row - row of the image
+		 * @param x0 - First column
+		 * @param x1 - Last column (exclusive)
+		 * @param words - words receiving the result, pixel x at bit (x-x0)%64 of word wordOffset+(x-x0)/64
+		 * @param wordOffset - first word of the result
+		 */
+		void row(int [] columnCounts,int row,int x0,int x1,long [] words,int wordOffset){
+			int first = firstColumn(x0);
+			long limit = (long)idx * (Math.min(row+radiusY,height-1) - Math.max(row-radiusY,0) + 1);
+			int count = 0;
+			for(int x = first; x <= x0+radiusX && x < width;x++)
+				count += columnCounts[x-first];
+			long word = 0;
+			for(int col = x0; col < x1;col++){
+				if(col > x0){
+					if(col-radiusX-1 >= 0)
+						count -= columnCounts[col-radiusX-1-first];
+					if(col+radiusX < width)
+						count += columnCounts[col+radiusX-first];
+				}
+				if(count * maskSize > limit * countsX[col])
+					word |= 1L << (col-x0);//The shift only uses the 6 lowest bits.
+				if(((col-x0) & 63) == 63 || col == x1-1){
+					words[wordOffset + ((col-x0) >>> 6)] = word;
+					word = 0;
+				}
+			}
+		}
+	}
+}
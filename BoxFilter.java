@@ -0,0 +1,241 @@
+/**Implementation of a separable mean (box) filter with running sums.
+ * The horizontal pass keeps one running sum per row : the pixel entering the kernel is added and the one leaving it
+ * is subtracted. Every step depends on the previous one, so this pass is not vectorized, but the columns near the borders
+ * have their own loops and the loop over the interior columns has no branch.
+ * The vertical pass does the same with one running sum per column, but the image is traveled row by row :
+ * the row leaving the kernel is subtracted from a row of sums and the row entering it is added. Every access is then
+ * sequential in memory, and the loops over a row (addRow, subtractRow, divideRow) have no branch and no dependency
+ * between columns, so they can be vectorized by the JIT compiler.
+ *
+ * BORDERS
+ * Padding.NONE : near the borders, the kernel shrinks to the pixels inside the image and the sum
+ * is divided by the number of these pixels.
+ * Other padding types : the kernel reads the padded image (see Padding) and the sum is always divided by the kernel size.
+ * The horizontal pass reads padded rows, and the vertical pass pads the rows of the horizontal means : the padding rules
+ * are linear, so the mean in X of a padding row is the padding of the means in X of the rows of the image.
+ *
+ * Every running sum is calculated in the same order whatever the number of threads, so the result
+ * doesn't depend on the number of threads.
+ *------ EFFICIENCY ------
+ *Cost per pixel : 2 additions and 1 division per pass, whatever the kernel size.
+ * @author Jacques Boisvert
+ */
+public class BoxFilter {
+
+	//Smallest number of columns of a band of the vertical pass.
+	private final static int MIN_COLUMNS = 64;
+
+	/**Function filter calculates the mean of a filterWidth x filterHeight kernel at every pixel.
+	 *
+	 * @param pix - 32 bits float pixel array, not modified
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param filterWidth - Filter width
+	 * @param filterHeight - Filter height
+	 * @return meanPix - Pixel array of the means (pix itself if the filter is 1 x 1)
+	 */
+	public static float [] filter(float [] pix,int width,int height,int filterWidth,int filterHeight){
+		return meanColumns(meanRows(pix,width,height,filterWidth),width,height,filterHeight);
+	}
+
+	/**Function filter calculates the mean of a filterWidth x filterHeight kernel at every pixel with a padding of the image.
+	 *
+	 * @param pix - 32 bits float pixel array, not modified
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param filterWidth - Filter width
+	 * @param filterHeight - Filter height
+	 * @param paddingType - Padding.NONE (the kernel shrinks), ANTISYMMETRIC, SYMMETRIC, REPLICATE or ZERO
+	 * @return meanPix - Pixel array of the means (pix itself if the filter is 1 x 1)
+	 */
+	public static float [] filter(float [] pix,int width,int height,int filterWidth,int filterHeight,int paddingType){
+		if(paddingType == Padding.NONE)
+			return filter(pix,width,height,filterWidth,filterHeight);
+		Padding.validate(paddingType);
+		return meanColumns(meanRows(pix,width,height,filterWidth,paddingType),width,height,filterHeight,paddingType);
+	}
+
+	/**Function meanRows calculates the mean in X with a linear kernel of length filterWidth.
+	 *
+	 * @param pix - 32 bits float pixel array, not modified
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param filterWidth - Filter width
+	 * @return meanPix - Pixel array of the means (pix itself if filterWidth is 1)
+	 */
+	public static float [] meanRows(float [] pix,int width,int height,int filterWidth){
+		if(filterWidth == 1)
+			return pix;
+		float [] meanPix = new float [pix.length];
+		int radius = filterWidth/2;
+		int [] counts = windowCounts(width,radius);
+		Parallel.forBands(height,(start,end) -> {
+			for(int row = start; row < end;row++){
+				int offset = row*width;
+				float sum = 0;
+				for(int i = 0; i <= radius && i < width;i++)
+					sum += pix[offset+i];
+				meanPix[offset] = sum / counts[0];
+				//Columns [1,head[ : no pixel leaves the kernel, columns [tail,width[ : no pixel enters it.
+				int head = Math.min(radius+1,width);
+				int tail = Math.max(width-radius,1);
+				int col = 1;
+				for(; col < Math.min(head,tail);col++){
+					sum += pix[offset+col+radius];
+					meanPix[offset+col] = sum / counts[col];
+				}
+				for(; col < tail;col++){
+					sum -= pix[offset+col-radius-1];
+					sum += pix[offset+col+radius];
+					meanPix[offset+col] = sum / counts[col];
+				}
+				//Kernel wider than the image : the columns of [tail,head[ see the whole row.
+				for(; col < head;col++)
+					meanPix[offset+col] = sum / counts[col];
+				for(; col < width;col++){
+					sum -= pix[offset+col-radius-1];
+					meanPix[offset+col] = sum / counts[col];
+				}
+			}
+		});
+		return meanPix;
+	}
+
+	/**Function meanColumns calculates the mean in Y with a linear kernel of length filterHeight.
+	 * The image is divided in bands of columns, and every band is traveled row by row with a row of running sums.
+	 * @param pix - 32 bits float pixel array, not modified
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param filterHeight - Filter height
+	 * @return meanPix - Pixel array of the means (pix itself if filterHeight is 1)
+	 */
+	public static float [] meanColumns(float [] pix,int width,int height,int filterHeight){
+		if(filterHeight == 1)
+			return pix;
+		float [] meanPix = new float [pix.length];
+		int radius = filterHeight/2;
+		int [] counts = windowCounts(height,radius);
+		Parallel.forBands(width,MIN_COLUMNS,(start,end) -> {
+			float [] sums = new float [end-start];
+			for(int i = 0; i <= radius && i < height;i++)
+				addRow(sums,pix,i*width+start);
+			divideRow(sums,counts[0],meanPix,start);
+			for(int row = 1; row < height;row++){
+				if(row-radius-1 >= 0)
+					subtractRow(sums,pix,(row-radius-1)*width+start);
+				if(row+radius < height)
+					addRow(sums,pix,(row+radius)*width+start);
+				divideRow(sums,counts[row],meanPix,row*width+start);
+			}
+		});
+		return meanPix;
+	}
+
+	/**Function meanRows calculates the mean in X with a linear kernel of length filterWidth on the padded rows.
+	 *
+	 * @param pix - 32 bits float pixel array, not modified
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param filterWidth - Filter width
+	 * @param paddingType - Padding.ANTISYMMETRIC, SYMMETRIC, REPLICATE or ZERO
+	 * @return meanPix - Pixel array of the means (pix itself if filterWidth is 1)
+	 */
+	public static float [] meanRows(float [] pix,int width,int height,int filterWidth,int paddingType){
+		if(filterWidth == 1)
+			return pix;
+		float [] meanPix = new float [pix.length];
+		int radius = filterWidth/2;
+		Parallel.forBands(height,(start,end) -> {
+			float [] paddedRow = new float [width + 2*radius];
+			for(int row = start; row < end;row++){
+				Padding.row(pix,width,height,row,radius,paddingType,paddedRow,0);
+				int offset = row*width;
+				//Pixel col of the image is at col+radius in the padded row.
+				float sum = 0;
+				for(int i = 0; i < filterWidth;i++)
+					sum += paddedRow[i];
+				meanPix[offset] = sum / filterWidth;
+				for(int col = 1; col < width;col++){
+					sum -= paddedRow[col-1];
+					sum += paddedRow[col-1+filterWidth];
+					meanPix[offset+col] = sum / filterWidth;
+				}
+			}
+		});
+		return meanPix;
+	}
+
+	/**Function meanColumns calculates the mean in Y with a linear kernel of length filterHeight on the padded columns.
+	 * The rows of the image are read in place, and only the padding rows are calculated.
+	 * @param pix - 32 bits float pixel array, not modified
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param filterHeight - Filter height
+	 * @param paddingType - Padding.ANTISYMMETRIC, SYMMETRIC, REPLICATE or ZERO
+	 * @return meanPix - Pixel array of the means (pix itself if filterHeight is 1)
+	 */
+	public static float [] meanColumns(float [] pix,int width,int height,int filterHeight,int paddingType){
+		if(filterHeight == 1)
+			return pix;
+		float [] meanPix = new float [pix.length];
+		int radius = filterHeight/2;
+		Parallel.forBands(width,MIN_COLUMNS,(start,end) -> {
+			float [] sums = new float [end-start];
+			float [] paddingRow = new float [end-start];
+			for(int row = -radius; row <= radius;row++)
+				addPaddedRow(sums,pix,width,height,row,start,paddingType,paddingRow,1);
+			divideRow(sums,filterHeight,meanPix,start);
+			for(int row = 1; row < height;row++){
+				addPaddedRow(sums,pix,width,height,row-radius-1,start,paddingType,paddingRow,-1);
+				addPaddedRow(sums,pix,width,height,row+radius,start,paddingType,paddingRow,1);
+				divideRow(sums,filterHeight,meanPix,row*width+start);
+			}
+		});
+		return meanPix;
+	}
+
+	/**Function addPaddedRow adds (sign 1) or subtracts (sign -1) the columns [start,start+sums.length[ of padded row y.
+	 * A row of the image is read in place, a padding row is calculated in paddingRow.
+	 */
+	private static void addPaddedRow(float [] sums,float [] pix,int width,int height,int y,int start,int paddingType,float [] paddingRow,int sign){
+		float [] values = pix;
+		int offset = y*width + start;
+		if(y < 0 || y >= height){
+			Padding.segment(pix,width,height,y,start,start+sums.length,paddingType,paddingRow,0);
+			values = paddingRow;
+			offset = 0;
+		}
+		if(sign > 0)
+			addRow(sums,values,offset);
+		else
+			subtractRow(sums,values,offset);
+	}
+
+	/**Function windowCounts returns the number of pixels inside the image of a kernel of radius radius at every position.
+	 *
+	 * @param length - Number of pixels of the row (or column)
+	 * @param radius - Kernel radius
+	 * @return counts - counts[i] = number of pixels between i-radius and i+radius inside [0,length[.
+	 */
+	static int [] windowCounts(int length,int radius){
+		int [] counts = new int [length];
+		for(int i = 0; i < length;i++)
+			counts[i] = Math.min(i+radius,length-1) - Math.max(i-radius,0) + 1;
+		return counts;
+	}
+
+	private static void addRow(float [] sums,float [] pix,int offset){
+		for(int i = 0; i < sums.length;i++)
+			sums[i] += pix[offset+i];
+	}
+
+	private static void subtractRow(float [] sums,float [] pix,int offset){
+		for(int i = 0; i < sums.length;i++)
+			sums[i] -= pix[offset+i];
+	}
+
+	private static void divideRow(float [] sums,int count,float [] meanPix,int offset){
+		for(int i = 0; i < sums.length;i++)
+			meanPix[offset+i] = sums[i] / count;
+	}
+}
@@ -0,0 +1,90 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**Sizes of the data caches of the processor, used to size the tiles of the filters (see TiledSegmenter).
+ * The sizes are read once from /sys/devices/system/cpu/cpu0/cache (Linux). On the other systems, or if a level is missing,
+ * the default sizes of a desktop processor are used.
+ * @author Jacques Boisvert
+ */
+public class CacheInfo {
+
+	public final static long DEFAULT_L1 = 32 << 10;
+	public final static long DEFAULT_L2 = 256 << 10;
+	public final static long DEFAULT_L3 = 8 << 20;
+	private final static String CACHE_DIRECTORY = "/sys/devices/system/cpu/cpu0/cache";
+
+	//Sizes in bytes of the data (or unified) caches of level 1 to 3.
+	private static volatile long [] sizes;
+
+	/**Return the size in bytes of the level 1 data cache.
+	 *
+	 */
+	public static long getL1(){
+		return sizes()[0];
+	}
+
+	/**Return the size in bytes of the level 2 cache (of 1 core).
+	 *
+	 */
+	public static long getL2(){
+		return sizes()[1];
+	}
+
+	/**Return the size in bytes of the level 3 cache (shared by the cores).
+	 *
+	 */
+	public static long getL3(){
+		return sizes()[2];
+	}
+
+	private static long [] sizes(){
+		if(sizes == null)
+			sizes = detect();
+		return sizes;
+	}
+
+	/**Function detect reads the sizes of the caches, the default size of a level is kept if it can't be read.
+	 *
+	 */
+	private static long [] detect(){
+		long [] detected = {DEFAULT_L1,DEFAULT_L2,DEFAULT_L3};
+		for(int index = 0; index < 8;index++){
+			Path directory = Paths.get(CACHE_DIRECTORY,"index" + index);
+			if(!Files.isDirectory(directory))
+				break;
+			try{
+				int level = Integer.parseInt(read(directory.resolve("level")));
+				String type = read(directory.resolve("type"));
+				long size = parseSize(read(directory.resolve("size")));
+				if(level >= 1 && level <= 3 && !type.equals("Instruction") && size > 0)
+					detected[level-1] = size;
+			}catch(IOException | NumberFormatException e){
+				//Keep the default size of the level.
+			}
+		}
+		return detected;
+	}
+
+	private static String read(Path file) throws IOException{
+		return new String(Files.readAllBytes(file),StandardCharsets.US_ASCII).trim();
+	}
+
+	/**Function parseSize returns the number of bytes of a size like 48K, 2048K or 32M.
+	 *
+	 */
+	static long parseSize(String size){
+		long unit = 1;
+		char suffix = Character.toUpperCase(size.charAt(size.length()-1));
+		if(suffix == 'K')
+			unit = 1 << 10;
+		else if(suffix == 'M')
+			unit = 1 << 20;
+		else if(suffix == 'G')
+			unit = 1 << 30;
+		String digits = unit == 1 ? size : size.substring(0,size.length()-1);
+		return Long.parseLong(digits.trim()) * unit;
+	}
+}
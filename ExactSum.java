@@ -0,0 +1,68 @@
+import java.math.BigInteger;
+
+/**Exact sum of float values.
+ * A float is an integer mantissa of 24 bits times a power of 2, so the values are summed without rounding
+ * in one long accumulator per exponent. The sum is then the same whatever the order of the additions,
+ * which gives the same result whatever the number of threads (every band has its own ExactSum, and the
+ * sums of the bands are merged with add(ExactSum)).
+ * Only the final conversion to double rounds : the accumulators are combined into one exact integer
+ * (sum of mantissaSums[e] * 2^e, see doubleValue), rounded once to the nearest double.
+ *------ EFFICIENCY ------
+ *Addition : 1 shift, 2 masks and 1 addition of longs
+ *Memory : 255 longs
+ *Capacity : at least 2^39 additions before an accumulator can overflow.
+ * @author Jacques Boisvert
+ */
+public class ExactSum {
+
+	//One accumulator per biased exponent of a float (0-254), the subnormal values using the exponent 1.
+	private final long [] mantissaSums = new long [255];
+	private long count;
+
+	/**Function add adds a finite float value to the sum.
+	 *
+	 * @param value - finite float value
+	 */
+	public void add(float value){
+		int bits = Float.floatToRawIntBits(value);
+		int exponent = (bits >>> 23) & 0xff;
+		long mantissa = bits & 0x7fffff;
+		if(exponent == 0)
+			exponent = 1;//Subnormal : no implicit bit, same scale as the exponent 1.
+		else
+			mantissa |= 0x800000;
+		mantissaSums[exponent] += bits < 0 ? -mantissa : mantissa;
+		count++;
+	}
+
+	/**Function add adds the values of another sum to this sum.
+	 *
+	 * @param sum - other sum, not modified
+	 */
+	public void add(ExactSum sum){
+		for(int i = 0; i < mantissaSums.length;i++)
+			mantissaSums[i] += sum.mantissaSums[i];
+		count += sum.count;
+	}
+
+	/**Return the number of values added.
+	 *
+	 */
+	public long getCount(){
+		return count;
+	}
+
+	/**Return the sum, correctly rounded to a double (to nearest, ties to even).
+	 *
+	 */
+	public double doubleValue(){
+		//A float of biased exponent e and mantissa m is m * 2^(e-150) : the sum is the integer sum of the mantissaSums[e] * 2^e
+		//(at most 2^317) times 2^-150. Converting the accumulators one by one would round every accumulator above 2^53 and
+		//every partial sum, so they are combined exactly first.
+		BigInteger sum = BigInteger.ZERO;
+		for(int i = mantissaSums.length-1; i >= 0;i--)
+			sum = sum.shiftLeft(1).add(BigInteger.valueOf(mantissaSums[i]));
+		//BigInteger.doubleValue rounds to nearest, and the scaling is exact : a non zero sum is at least 2^-150, a normal double.
+		return Math.scalb(sum.doubleValue(),-150);
+	}
+}
@@ -0,0 +1,404 @@
+/**Implementation of a sliding histogram median filter (Huang, Yang and Tang, 1979).
+ * Instead of copying and selecting the whole kernel at every pixel, the filter keeps a histogram
+ * of the values inside the kernel. When the kernel moves by one pixel, only the column (or row)
+ * leaving the kernel is removed and the one entering it is added, and the median is tracked
+ * incrementally from its previous position. The kernel travels the image in a zigzag (left to right,
+ * then right to left on the next row), so the histogram never has to be rebuilt.
+ *
+ *------ EFFICIENCY ------
+ *Cost per pixel : O(filterWidth + filterHeight) instead of O(filterWidth * filterHeight)
+ *Memory : one histogram of at most MAX_BINS integers and filterHeight+1 padded rows per band (see Padding)
+ *
+ *Values are mapped to histogram bins with bin = (value - offset) * scale, rounded.
+ *For data coming from 8/16 bits images (integer values stored in floats), offset is the minimum value and
+ *scale is 1, so the result is exactly the one of QuickSelect. For other float data, the values are quantized
+ *and the median is accurate to half a quantization step. The levels span the whole range of the padded image, so a single
+ *outlier far from the other values leaves only a few bins to the rest of the image. A range that is not finite
+ *(an infinite value, or a difference max - min overflowing) can't be quantized : see isQuantizable, Filter.engine
+ *replaces the sliding histogram by QuickSelect for such images.
+ *The short and byte versions read 8/16 bits images directly, a few padded rows at a time (see Padding.Rows), and always
+ *use one bin per value. They give the medians row by row (MedianRows), so a caller can use them without a median image.
+ *An image read row by row (Padding.Source) is filtered in one band, with the bins of its range found in a first pass.
+ * @author Jacques Boisvert
+ */
+public class HistogramMedian {
+
+	//Largest number of bins of float data. A 16 bits image padded with the antisymmetric padding can reach twice the 16 bits range
+	//(more in the corners, see isExact).
+	public final static int MAX_BINS = 1 << 17;
+	//Number of quantization levels used for float data that are not integer values.
+	public final static int DEFAULT_LEVELS = 1 << 16;
+
+	/**Receiver of the medians of the rows of an image.
+	 * The rows of different bands are given concurrently, in any order.
+	 */
+	public interface MedianRows{
+		/**Function row receives the medians of a row. The array is reused for the next row of the band.
+		 *
+		 * @param row - row of the image
+		 * @param medians - medians of the imageWidth pixels of the row
+		 */
+		void row(int row,float [] medians);
+	}
+
+	/**Function filter calculates the median of an image with a sliding histogram.
+	 * The values are used exactly if they are all integers and their range (with the padding) fits in MAX_BINS,
+	 * otherwise they are quantized in levels bins.
+	 * @param pix - 32 bits float pixel array, not modified
+	 * @param imageWidth - The image width
+	 * @param imageHeight - The image height
+	 * @param filterWidth - filter width
+	 * @param filterHeight - filter height
+	 * @param paddingType - Padding.ANTISYMMETRIC, SYMMETRIC, REPLICATE or ZERO
+	 * @param levels - Number of quantization levels used if the values are not integers.
+	 * @return medianArray - Pixel array of size imageWidth*imageHeight.
+	 */
+	public static float [] filter(float [] pix,int imageWidth,int imageHeight,int filterWidth,int filterHeight,int paddingType,int levels){
+		return filter(pix,imageWidth,imageHeight,filterWidth,filterHeight,paddingType,
+				range(pix,imageWidth,imageHeight,filterWidth,filterHeight,paddingType),levels);
+	}
+
+	/**Function filter calculates the median of an image with a sliding histogram, with the range of the padded image
+	 * already read (see range).
+	 *
+	 */
+	static float [] filter(float [] pix,int imageWidth,int imageHeight,int filterWidth,int filterHeight,int paddingType,
+			float [] range,int levels){
+		final float [] medianArray = new float [imageWidth*imageHeight];
+		filter(pix,imageWidth,imageHeight,filterWidth,filterHeight,paddingType,range,levels,MAX_BINS,
+				(row,medians) -> System.arraycopy(medians,0,medianArray,row*imageWidth,imageWidth));
+		return medianArray;
+	}
+
+	/**Function filter calculates the exact median of a 16 bits image with a sliding histogram.
+	 * The histogram has one bin per value of the padded image, whatever its range, and the image is never converted to float
+	 * as a whole (see Padding.Rows).
+	 * @param pix - 16 bits pixel array (unsigned values), not modified
+	 * @param imageWidth - The image width
+	 * @param imageHeight - The image height
+	 * @param filterWidth - filter width
+	 * @param filterHeight - filter height
+	 * @param paddingType - Padding.ANTISYMMETRIC, SYMMETRIC, REPLICATE or ZERO
+	 * @param output - receiver of the medians (integer values) of every row
+	 */
+	public static void filter(short [] pix,int imageWidth,int imageHeight,int filterWidth,int filterHeight,int paddingType,MedianRows output){
+		filter(pix,imageWidth,imageHeight,filterWidth,filterHeight,paddingType,
+				range(pix,imageWidth,imageHeight,filterWidth,filterHeight,paddingType),DEFAULT_LEVELS,Integer.MAX_VALUE,output);
+	}
+
+	/**Function filter calculates the exact median of an 8 bits image with a sliding histogram.
+	 * Same as the 16 bits version.
+	 * @param pix - 8 bits pixel array (unsigned values), not modified
+	 */
+	public static void filter(byte [] pix,int imageWidth,int imageHeight,int filterWidth,int filterHeight,int paddingType,MedianRows output){
+		filter(pix,imageWidth,imageHeight,filterWidth,filterHeight,paddingType,
+				range(pix,imageWidth,imageHeight,filterWidth,filterHeight,paddingType),DEFAULT_LEVELS,Integer.MAX_VALUE,output);
+	}
+
+	/**Function filter calculates the median of a float, short or byte image. Integer values are used exactly if their range
+	 * fits in maxBins bins.
+	 *
+	 */
+	private static void filter(Object pix,int imageWidth,int imageHeight,int filterWidth,int filterHeight,int paddingType,
+			float [] range,int levels,int maxBins,MedianRows output){
+		Bins bins = new Bins(range,levels,maxBins);
+		//Every band of rows starts its own zigzag with its own histogram and its own ring of padded rows.
+		Parallel.forBands(imageHeight,Math.max(Parallel.DEFAULT_MIN_BAND,filterHeight),(start,end) -> {
+			//The kernel reads filterHeight rows, and 1 more when it moves down.
+			Padding.Rows rows = Padding.Rows.of(pix,imageWidth,imageHeight,filterWidth/2,filterHeight+1,paddingType);
+			filterRows(rows,imageWidth,filterWidth,filterHeight,bins,output,start,end);
+		});
+	}
+
+	/**Function filter calculates the median of the rows [rowStart,rowEnd[ of an image read row by row, in the calling thread.
+	 * The bins are the ones of the whole image (see range), so the medians are the ones of filter of the same pixel array.
+	 * The rows of the source are read in increasing order, with a look-back of filterHeight+1 rows (see Padding.Rows).
+	 * @param source - rows of the image
+	 * @param imageWidth - The image width
+	 * @param imageHeight - The image height
+	 * @param filterWidth - filter width
+	 * @param filterHeight - filter height
+	 * @param paddingType - Padding.ANTISYMMETRIC, SYMMETRIC, REPLICATE or ZERO
+	 * @param range - range of the padded image, see range
+	 * @param levels - Number of quantization levels used if the values are not integers.
+	 * @param rowStart - First row to filter
+	 * @param rowEnd - Last row to filter (exclusive)
+	 * @param output - receiver of the medians of every row, in order
+	 */
+	static void filter(Padding.Source source,int imageWidth,int imageHeight,int filterWidth,int filterHeight,int paddingType,
+			float [] range,int levels,int rowStart,int rowEnd,MedianRows output){
+		Padding.Rows rows = new Padding.Rows(source,imageWidth,imageHeight,filterWidth/2,filterHeight+1,paddingType);
+		filterRows(rows,imageWidth,filterWidth,filterHeight,new Bins(range,levels,MAX_BINS),output,rowStart,rowEnd);
+	}
+
+	/**Function filter calculates the median of the columns [x0,x1[ of the rows [rowStart,rowEnd[ of an image (a tile),
+	 * in the calling thread. The bins are the ones of the whole image (see range), so the medians are the ones of filter.
+	 * @param pix - 32 bits float pixel array, not modified
+	 * @param imageWidth - The image width
+	 * @param imageHeight - The image height
+	 * @param x0 - First column
+	 * @param x1 - Last column (exclusive)
+	 * @param filterWidth - filter width
+	 * @param filterHeight - filter height
+	 * @param paddingType - Padding.ANTISYMMETRIC, SYMMETRIC, REPLICATE or ZERO
+	 * @param range - range of the padded image, see range
+	 * @param levels - Number of quantization levels used if the values are not integers.
+	 * @param rowStart - First row to filter
+	 * @param rowEnd - Last row to filter (exclusive)
+	 * @param output - receiver of the x1-x0 medians of every row, in order
+	 */
+	static void filter(float [] pix,int imageWidth,int imageHeight,int x0,int x1,int filterWidth,int filterHeight,int paddingType,
+			float [] range,int levels,int rowStart,int rowEnd,MedianRows output){
+		Padding.Rows rows = new Padding.Rows(pix,imageWidth,imageHeight,x0,x1,filterWidth/2,filterHeight+1,paddingType);
+		filterRows(rows,x1-x0,filterWidth,filterHeight,new Bins(range,levels,MAX_BINS),output,rowStart,rowEnd);
+	}
+
+	/**Mapping from the values to the histogram bins : bin = (value - offset) * scale, rounded.
+	 *
+	 */
+	private static final class Bins{
+		final float offset;
+		final float scale;
+		final int size;
+
+		Bins(float [] range,int levels,int maxBins){
+			float min = range[0];
+			float max = range[1];
+			//The scale of an infinite range is 0, every median would be NaN.
+			if(!isQuantizable(range))
+				throw new MathIllegalArgumentException(LocalizedFormats.NOT_FINITE_NUMBER,max - min);
+			if(range[2] != 0 && max - min < maxBins){
+				scale = 1;
+				size = (int)(max - min) + 1;
+			}else if(max > min){
+				size = Math.min(levels,MAX_BINS);
+				scale = (size - 1) / (max - min);
+			}else{//Flat image
+				scale = 1;
+				size = 1;
+			}
+			offset = min;
+		}
+	}
+
+	/**Function isExact returns true if filter would use the values of the padded image without quantization.
+	 *
+	 * @param pix - 32 bits float pixel array, not modified
+	 * @param imageWidth - The image width
+	 * @param imageHeight - The image height
+	 * @param filterWidth - filter width
+	 * @param filterHeight - filter height
+	 * @param paddingType - Padding.ANTISYMMETRIC, SYMMETRIC, REPLICATE or ZERO
+	 * @return true if all the values are integers and their range fits in MAX_BINS.
+	 */
+	public static boolean isExact(float [] pix,int imageWidth,int imageHeight,int filterWidth,int filterHeight,int paddingType){
+		return isExact(range(pix,imageWidth,imageHeight,filterWidth,filterHeight,paddingType));
+	}
+
+	/**Function isExact returns true if filter would use the values of a padded image of this range without quantization.
+	 *
+	 * @param range - range of the padded image, see range
+	 */
+	static boolean isExact(float [] range){
+		return range[2] != 0 && range[1] - range[0] < MAX_BINS;
+	}
+
+	/**Function isQuantizable returns true if the values of a padded image of this range can be mapped to the bins :
+	 * false if the image contains an infinite value, or if max - min overflows.
+	 * @param range - range of the padded image, see range
+	 */
+	static boolean isQuantizable(float [] range){
+		return Float.isFinite(range[1] - range[0]);
+	}
+
+	/**Function range returns the minimum and the maximum of the padded image, and if all its values are integers.
+	 * The padded rows are read one by one, so no padded image is created.
+	 * @param pix - float [], short [] or byte [] pixel array, or Padding.Source (read in increasing order of rows)
+	 * @return {min, max, 1 if all the values are integers, 0 otherwise}
+	 */
+	static float [] range(Object pix,int imageWidth,int imageHeight,int filterWidth,int filterHeight,int paddingType){
+		int padY = filterHeight/2;
+		float [] range = {Float.POSITIVE_INFINITY,Float.NEGATIVE_INFINITY,pix instanceof short [] || pix instanceof byte [] ? 2 : 1};
+		Padding.Rows rows = Padding.Rows.of(pix,imageWidth,imageHeight,filterWidth/2,1,paddingType);
+		float [] paddedRows = rows.getBuffer();
+		int paddedWidth = rows.getPaddedWidth();
+		for(int row = -padY; row < imageHeight + padY;row++){
+			int offset = rows.window(row,1);
+			for(int col = 0; col < paddedWidth;col++){
+				float value = paddedRows[offset+col];
+				if(value < range[0])
+					range[0] = value;
+				if(value > range[1])
+					range[1] = value;
+				//8/16 bits values and their padding are always integers.
+				if(range[2] == 1 && value != (float)Math.rint(value))
+					range[2] = 0;
+			}
+		}
+		return range;
+	}
+
+	/**Function range returns the range of the part of the padded image owned by the block [x0,x1[ x [rowStart,rowEnd[ :
+	 * the pixels of the block, and the padding beyond the borders of the image touched by the block. The ranges of the
+	 * blocks of a partition of the image merged (min of the min, max of the max, integers if all are) are the range
+	 * of the whole padded image, so the range of a large image can be found block by block.
+	 * @param pix - 32 bits float pixel array of the image, not modified
+	 * @param x0 - First column of the block
+	 * @param x1 - Last column of the block (exclusive)
+	 * @param rowStart - First row of the block
+	 * @param rowEnd - Last row of the block (exclusive)
+	 * @return {min, max, 1 if all the values are integers, 0 otherwise}
+	 */
+	static float [] range(float [] pix,int imageWidth,int imageHeight,int x0,int x1,int rowStart,int rowEnd,
+			int filterWidth,int filterHeight,int paddingType){
+		int padX = filterWidth/2;
+		int padY = filterHeight/2;
+		float [] range = {Float.POSITIVE_INFINITY,Float.NEGATIVE_INFINITY,1};
+		Padding.Rows rows = new Padding.Rows(pix,imageWidth,imageHeight,x0,x1,padX,1,paddingType);
+		float [] paddedRows = rows.getBuffer();
+		int first = x0 == 0 ? 0 : padX;
+		int last = x1 == imageWidth ? rows.getPaddedWidth() : rows.getPaddedWidth() - padX;
+		for(int row = rowStart == 0 ? -padY : rowStart; row < (rowEnd == imageHeight ? imageHeight + padY : rowEnd);row++){
+			int offset = rows.window(row,1);
+			for(int col = first; col < last;col++){
+				float value = paddedRows[offset+col];
+				if(value < range[0])
+					range[0] = value;
+				if(value > range[1])
+					range[1] = value;
+				if(range[2] == 1 && value != (float)Math.rint(value))
+					range[2] = 0;
+			}
+		}
+		return range;
+	}
+
+	/**Function filterRows calculates the median of the rows [rowStart,rowEnd[ of an image with a sliding histogram,
+	 * using the given mapping from values to bins.
+	 * @param rows - padded rows of the image, with filterWidth/2 padding columns
+	 * @param imageWidth - The image width
+	 * @param filterWidth - filter width
+	 * @param filterHeight - filter height
+	 * @param bins - mapping from the values to the bins
+	 * @param output - receiver of the medians of every row
+	 * @param rowStart - First row to filter
+	 * @param rowEnd - Last row to filter (exclusive)
+	 */
+	private static void filterRows(Padding.Rows rows,int imageWidth,int filterWidth,int filterHeight,
+			Bins bins,MedianRows output,int rowStart,int rowEnd){
+		float offset = bins.offset;
+		float scale = bins.scale;
+		int [] histogram = new int [bins.size];
+		float [] medians = new float [imageWidth];
+		int rank = (filterWidth*filterHeight)/2+1;//Same k-order value as QuickSelect.
+		int radiusY = filterHeight/2;
+		float [] paddedArray = rows.getBuffer();
+		int paddedWidth = rows.getPaddedWidth();
+		//The kernel centered on pixel (col,row) covers the columns [col,col+filterWidth[ of the padded rows [row-radiusY,row+radiusY].
+
+		//Fill the histogram with the first kernel.
+		int firstOffset = rows.window(rowStart-radiusY,filterHeight);
+		for(int i = 0;i < filterHeight;i++){
+			int rowOffset = firstOffset + i*paddedWidth;
+			for(int j = 0;j < filterWidth;j++){
+				histogram[bin(paddedArray[rowOffset+j],offset,scale)]++;
+			}
+		}
+		int median = 0;
+		int below = 0;//Number of values in the histogram that are in a bin lower than median.
+		while(below + histogram[median] < rank){
+			below += histogram[median];
+			median++;
+		}
+
+		for(int row = rowStart;row < rowEnd;row++){
+			boolean leftToRight = (row - rowStart) % 2 == 0;
+			if(row > rowStart){
+				//Move the kernel down. The kernel is at column 0 before a left to right row and at column imageWidth-1 otherwise.
+				int col = leftToRight ? 0 : imageWidth-1;
+				//Padded rows row-1-radiusY (leaving the kernel) to row+radiusY (entering it).
+				int removeOffset = rows.window(row-1-radiusY,filterHeight+1) + col;
+				int addOffset = removeOffset + filterHeight*paddedWidth;
+				for(int j = 0; j < filterWidth;j++){
+					int removed = bin(paddedArray[removeOffset+j],offset,scale);
+					histogram[removed]--;
+					if(removed < median)
+						below--;
+					int added = bin(paddedArray[addOffset+j],offset,scale);
+					histogram[added]++;
+					if(added < median)
+						below++;
+				}
+				//Track the median.
+				while(below >= rank){
+					median--;
+					below -= histogram[median];
+				}
+				while(below + histogram[median] < rank){
+					below += histogram[median];
+					median++;
+				}
+			}
+			int topOffset = rows.window(row-radiusY,filterHeight);
+			if(leftToRight){
+				//Left to right
+				medians[0] = offset + median / scale;
+				for(int col = 1;col < imageWidth;col++){
+					for(int i = 0;i < filterHeight;i++){
+						int rowOffset = topOffset + i*paddedWidth;
+						int removed = bin(paddedArray[rowOffset+col-1],offset,scale);
+						histogram[removed]--;
+						if(removed < median)
+							below--;
+						int added = bin(paddedArray[rowOffset+col-1+filterWidth],offset,scale);
+						histogram[added]++;
+						if(added < median)
+							below++;
+					}
+					while(below >= rank){
+						median--;
+						below -= histogram[median];
+					}
+					while(below + histogram[median] < rank){
+						below += histogram[median];
+						median++;
+					}
+					medians[col] = offset + median / scale;
+				}
+			}else{
+				//Right to left
+				medians[imageWidth-1] = offset + median / scale;
+				for(int col = imageWidth-2;col >= 0;col--){
+					for(int i = 0;i < filterHeight;i++){
+						int rowOffset = topOffset + i*paddedWidth;
+						int removed = bin(paddedArray[rowOffset+col+filterWidth],offset,scale);
+						histogram[removed]--;
+						if(removed < median)
+							below--;
+						int added = bin(paddedArray[rowOffset+col],offset,scale);
+						histogram[added]++;
+						if(added < median)
+							below++;
+					}
+					while(below >= rank){
+						median--;
+						below -= histogram[median];
+					}
+					while(below + histogram[median] < rank){
+						below += histogram[median];
+						median++;
+					}
+					medians[col] = offset + median / scale;
+				}
+			}
+			output.row(row,medians);
+		}
+	}
+
+	/**Function bin returns the histogram bin of a value.
+	 *
+	 */
+	private static int bin(float value,float offset,float scale){
+		return (int)((value - offset) * scale + 0.5f);
+	}
+}
@@ -0,0 +1,342 @@
+/**Segmentation of images too large for one array (whole-slide images, stitched mosaics) : more than 2^31 pixels, or
+ * more than the memory. The image is read tile by tile from a TileSource, and the mask is written tile by tile to a TileSink.
+ * Only the tiles being processed and their halos are in memory, one per thread.
+ *
+ * HALO
+ * The foreground of a pixel needs the pixels of its background kernel, and the mask of a pixel needs the foreground of
+ * its image filter kernel. A tile is read with a halo of bgKernel/2 + imgKernel/2 pixels (cut at the borders of the image),
+ * its foreground is calculated on the tile and a halo of imgKernel/2 pixels, and the pixels of the tile are counted
+ * (see TiledSegmenter.Medians and TiledSegmenter.Counter). Inside the image the kernels never reach the border of the
+ * part read, and at the borders of the image the part read has the borders of the image, so the padding is the same :
+ * the mask tiles are the tiles of the mask of the whole image.
+ *
+ * PASSES
+ * The pixel threshold depends on the noise of the whole image, so the tiles are read in passes :
+ *  1. (sliding histogram engine only) range of the padded image (see HistogramMedian.range), merged from the ranges
+ *     of the tiles, for the bins of the histogram.
+ *     (without background subtraction) 2 passes for the median of the image (see RadixSelect.Selection).
+ *  2. Noise : every tile calculates the third differences of the sample grid of NoiseEstimator whose pixels start in
+ *     the tile, from the foreground of the 4 rows of each grid row only. The tiles are the strata of the sample, the
+ *     robust standard deviation (see RobustStd) of all the differences is the global noise.
+ *  3. Mask : every tile is read with its halo, filtered, subtracted, thresholded, counted and written.
+ * As in StreamSegmenter, the noise is always estimated from a sample : if noiseSampleError is 0, DEFAULT_SAMPLE_ERROR is
+ * used. The masks are then the same as the ones of Segmenter.segment with the same parameters and
+ * noiseSampleError = StreamSegmenter.sampleError(params), for the images that fit in an array.
+ *
+ * TILE SIZE
+ * tileSize of the parameters (see TiledSegmenter), DEFAULT_TILE_SIZE for TILE_NONE : larger tiles read less halo, and
+ * fewer and larger parts of the source.
+ * The pyramid background (bgPyramidFactor > 1), the noise tracker and the debug images are not supported.
+ *------ EFFICIENCY ------
+ *Memory : O(threads * (tileSize + bgKernel + imgKernel)^2) + the noise sample, independent of the image size
+ *Time : 1 median of the image with the halos + the medians of the rows of the noise grid, with the threads of Parallel
+ * @author Jacques Boisvert
+ */
+public class LargeImageSegmenter {
+
+	//Side of the tiles when the tile size is TiledSegmenter.TILE_NONE.
+	public final static int DEFAULT_TILE_SIZE = 1024;
+
+	/**Tiles of the image to segment.
+	 * The calls are never concurrent, and every pass reads the image again, so the source must be able to read any part
+	 * of the image many times (a file, a pyramid level of a slide).
+	 */
+	public interface TileSource{
+		/**Function read copies the part [x,x+width[ x [y,y+height[ of the image in dest, row by row.
+		 *
+		 * @param x - first column, the part is inside the image
+		 * @param y - first row
+		 * @param width - number of columns
+		 * @param height - number of rows
+		 * @param dest - array receiving the width*height values of the part, pixel (x+i,y+j) at index j*width+i
+		 */
+		void read(int x,int y,int width,int height,float [] dest);
+	}
+
+	/**Receiver of the tiles of the mask.
+	 * The calls are never concurrent, the tiles are written in any order.
+	 */
+	public interface TileSink{
+		/**Function write receives a tile of the mask.
+		 *
+		 * @param x - column of the image of the first pixel of the tile
+		 * @param y - row of the image of the first pixel of the tile
+		 * @param mask - mask of the tile, pixel (x+i,y+j) of the image at (i,j)
+		 */
+		void write(int x,int y,BitMask mask);
+	}
+
+	/**Function segment segments an image read tile by tile, and writes the tiles of the mask.
+	 *
+	 * @param source - tiles of the image, read in several passes
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param params - Segmentation parameters, with bgPyramidFactor = 1
+	 * @param sink - receiver of the tiles of the mask
+	 * @return noise and threshold of the image, and the number of pixels of the mask
+	 */
+	public static StreamSegmenter.Result segment(TileSource source,int width,int height,SegmentationParams params,TileSink sink){
+		if(params == null || source == null || sink == null)
+			throw new MathIllegalArgumentException(LocalizedFormats.NULL_NOT_ALLOWED);
+		if(Math.min(width,height) < 4)//The third difference needs at least 4 rows/columns.
+			throw new NumberIsTooSmallException(Math.min(width,height),4,true);
+		if(params.getBgPyramidFactor() > 1)
+			throw new NumberIsTooLargeException(params.getBgPyramidFactor(),1,true);
+		return Parallel.withParallelism(params.getParallelism(),() -> new Slide(source,width,height,params).run(sink));
+	}
+
+	/**Function tileSize returns the side of the tiles of a segmentation.
+	 *
+	 */
+	public static int tileSize(SegmentationParams params){
+		if(params.getTileSize() == TiledSegmenter.TILE_NONE)
+			return DEFAULT_TILE_SIZE;
+		return TiledSegmenter.tileSize(params.getTileSize());
+	}
+
+	/**State of a tiled segmentation.
+	 *
+	 */
+	private static final class Slide{
+		private final TileSource source;
+		private final int width;
+		private final int height;
+		private final SegmentationParams params;
+		private final TiledSegmenter.Tiles tiles;
+		private final int bgRadiusX;
+		private final int bgRadiusY;
+		//Engine of the background median, StreamSegmenter.NO_BACKGROUND without background subtraction.
+		private final int engine;
+		//Range of the padded image for the sliding histogram.
+		private float [] range;
+		private int passes;
+
+		Slide(TileSource source,int width,int height,SegmentationParams params){
+			this.source = source;
+			this.width = width;
+			this.height = height;
+			this.params = params;
+			tiles = new TiledSegmenter.Tiles(width,height,tileSize(params));
+			bgRadiusX = params.getBgKernelWidth()/2;
+			bgRadiusY = params.getBgKernelHeight()/2;
+			engine = StreamSegmenter.engine(params,() -> range());
+		}
+
+		/**Function read copies the part [x0,x1[ x [y0,y1[ of the image in dest.
+		 *
+		 */
+		private void read(int x0,int x1,int y0,int y1,float [] dest){
+			synchronized(source){
+				source.read(x0,y0,x1-x0,y1-y0,dest);
+			}
+		}
+
+		/**Function range reads the range of the padded image once, tile by tile.
+		 *
+		 */
+		private float [] range(){
+			if(range != null)
+				return range;
+			passes++;
+			float [] merged = {Float.POSITIVE_INFINITY,Float.NEGATIVE_INFINITY,1};
+			int paddingType = params.getPaddingType();
+			Parallel.forBands(tiles.count,1,(start,end) -> {
+				float [] part = null;
+				for(int tile = start; tile < end;tile++){
+					//The padding of the borders of the image is calculated from the tile and its halo.
+					Part p = new Part(tiles.x0(tile),tiles.x1(tile),tiles.y0(tile),tiles.y1(tile),bgRadiusX,bgRadiusY);
+					part = p.buffer(part);
+					read(p.x0,p.x1,p.y0,p.y1,part);
+					float [] tileRange = HistogramMedian.range(part,p.width(),p.height(),p.blockX0,p.blockX1,p.blockY0,p.blockY1,
+							params.getBgKernelWidth(),params.getBgKernelHeight(),paddingType);
+					synchronized(merged){
+						merged[0] = Math.min(merged[0],tileRange[0]);
+						merged[1] = Math.max(merged[1],tileRange[1]);
+						merged[2] = Math.min(merged[2],tileRange[2]);
+					}
+				}
+			});
+			range = merged;
+			return range;
+		}
+
+		StreamSegmenter.Result run(TileSink sink){
+			/**ESTIMATE BACKGROUND
+			 *
+			 */
+			int bgValue = 0;
+			if(params.isBackgroundSubtraction() == false){
+				float [] part = new float [tiles.tileWidth*tiles.tileHeight];
+				bgValue = StreamSegmenter.backgroundValue((long)width*height,median -> {
+					passes++;
+					for(int tile = 0; tile < tiles.count;tile++){
+						int x0 = tiles.x0(tile);
+						int x1 = tiles.x1(tile);
+						int y0 = tiles.y0(tile);
+						int y1 = tiles.y1(tile);
+						read(x0,x1,y0,y1,part);
+						median.add(part,0,(x1-x0)*(y1-y0));
+					}
+				});
+			}
+
+			/**ESTIMATE NOISE
+			 *
+			 */
+			NoiseEstimator.Grid grid = StreamSegmenter.noiseGrid(width,height,params);
+			float [] sample = new float [grid.size()];
+			passes++;
+			Parallel.forBands(tiles.count,1,(start,end) -> {
+				Foreground foreground = new Foreground(tiles.tileWidth+3,tiles.tileHeight+3);
+				for(int tile = start; tile < end;tile++)
+					sample(tiles.x0(tile),tiles.x1(tile),tiles.y0(tile),tiles.y1(tile),grid,foreground,sample);
+			});
+			NoiseEstimator.Estimate noiseEstimate = NoiseEstimator.estimate(sample,grid);
+			float noise = noiseEstimate.std/20;
+
+			/**THRESHOLD
+			 *
+			 */
+			double thresh = bgValue + noise * params.getNseMult();
+			int imgWidth = params.getImgKernelWidth();
+			int imgHeight = params.getImgKernelHeight();
+			int idx = StreamSegmenter.thresholdIndex(width,height,params);
+			long [] maskPixels = new long [1];
+			passes++;
+			Parallel.forBands(tiles.count,1,(start,end) -> {
+				Foreground foreground = new Foreground(tiles.tileWidth + 2*(imgWidth/2),tiles.tileHeight + 2*(imgHeight/2));
+				TiledSegmenter.Counter counter = new TiledSegmenter.Counter(width,height,imgWidth,imgHeight,idx,tiles.tileWidth);
+				for(int tile = start; tile < end;tile++){
+					int x0 = tiles.x0(tile);
+					int x1 = tiles.x1(tile);
+					int y0 = tiles.y0(tile);
+					int y1 = tiles.y1(tile);
+					//Foreground of the tile and its halo of imgKernel/2 pixels.
+					Part area = new Part(x0,x1,y0,y1,imgWidth/2,imgHeight/2);
+					foreground.calculate(area.x0,area.x1,area.y0,area.y1);
+					BitMask mask = new BitMask(x1-x0,y1-y0);
+					counter.count(foreground.fgPix,area.width(),area.x0,area.y0,thresh,x0,x1,y0,y1,mask,x0,y0);
+					long cardinality = mask.cardinality();
+					synchronized(sink){
+						sink.write(x0,y0,mask);
+						maskPixels[0] += cardinality;
+					}
+				}
+			});
+			return new StreamSegmenter.Result(noise,thresh,noiseEstimate,maskPixels[0],passes);
+		}
+
+		/**Function sample calculates the differences of the grid whose first pixel is in the tile [x0,x1[ x [y0,y1[.
+		 * The grid rows closer than 4 rows are calculated together, the other ones only read their 4 rows and the halo.
+		 */
+		private void sample(int x0,int x1,int y0,int y1,NoiseEstimator.Grid grid,Foreground foreground,float [] sample){
+			int colStart = firstIndex(x0,grid.x0,grid.step);
+			int colEnd = Math.min(grid.nCols,firstIndex(x1,grid.x0,grid.step));
+			int rowStart = firstIndex(y0,grid.y0,grid.step);
+			int rowEnd = Math.min(grid.nRows,firstIndex(y1,grid.y0,grid.step));
+			if(colStart >= colEnd || rowStart >= rowEnd)
+				return;
+			//Columns of the foreground : the 4 columns of every difference.
+			int fgX0 = grid.x0 + colStart*grid.step;
+			int fgX1 = grid.x0 + (colEnd-1)*grid.step + 4;
+			StreamSegmenter.gridRuns(grid,rowStart,rowEnd,(first,end,endY) -> {
+				int fgY0 = grid.y0 + first*grid.step;
+				foreground.calculate(fgX0,fgX1,fgY0,endY);
+				for(int row = first; row < end;row++){
+					int y = grid.y0 + row*grid.step - fgY0;
+					for(int col = colStart; col < colEnd;col++){
+						int x = grid.x0 + col*grid.step - fgX0;
+						sample[row*grid.nCols+col] = FiniteDifference.thirdDifferenceAt(foreground.fgPix,fgX1-fgX0,x,y);
+					}
+				}
+			});
+		}
+
+		/**Function firstIndex returns the index of the first position origin+i*step >= x.
+		 *
+		 */
+		private int firstIndex(int x,int origin,int step){
+			return x <= origin ? 0 : (x - origin + step-1) / step;
+		}
+
+		/**Foreground of blocks of the image, read with their halo of background kernel. Used by 1 thread.
+		 *
+		 */
+		private final class Foreground{
+			private float [] part;
+			final float [] fgPix;
+			private final TiledSegmenter.Medians medians;
+
+			/**Create the buffers of the foreground of blocks of at most maxWidth x maxHeight pixels.
+			 * The array of the part read depends on the size of the block (see Part.buffer).
+			 */
+			Foreground(int maxWidth,int maxHeight){
+				fgPix = new float [maxWidth*maxHeight];
+				medians = engine == StreamSegmenter.NO_BACKGROUND ? null : new TiledSegmenter.Medians(engine,range,params,maxWidth);
+			}
+
+			/**Function calculate reads the block [x0,x1[ x [y0,y1[ and its halo, and calculates the foreground of the block
+			 * in fgPix, row by row.
+			 */
+			void calculate(int x0,int x1,int y0,int y1){
+				int blockWidth = x1-x0;
+				if(medians == null){
+					read(x0,x1,y0,y1,fgPix);
+					return;
+				}
+				Part p = new Part(x0,x1,y0,y1,bgRadiusX,bgRadiusY);
+				int partWidth = p.width();
+				part = p.buffer(part);
+				read(p.x0,p.x1,p.y0,p.y1,part);
+				float [] partPix = part;
+				medians.rows(part,partWidth,p.height(),p.blockX0,p.blockX1,p.blockY0,p.blockY1,(row,rowMedians) -> {
+					int partOffset = row*partWidth + p.blockX0;
+					int fgOffset = (row - p.blockY0)*blockWidth;
+					for(int i = 0; i < blockWidth;i++)
+						fgPix[fgOffset+i] = partPix[partOffset+i] - rowMedians[i];
+				});
+			}
+		}
+
+		/**Part of the image made of a block and its halo, cut at the borders of the image.
+		 * The block is [blockX0,blockX1[ x [blockY0,blockY1[ in the coordinates of the part.
+		 */
+		private final class Part{
+			final int x0;
+			final int x1;
+			final int y0;
+			final int y1;
+			final int blockX0;
+			final int blockX1;
+			final int blockY0;
+			final int blockY1;
+
+			Part(int blockX0,int blockX1,int blockY0,int blockY1,int haloX,int haloY){
+				x0 = Math.max(0,blockX0-haloX);
+				x1 = Math.min(width,blockX1+haloX);
+				y0 = Math.max(0,blockY0-haloY);
+				y1 = Math.min(height,blockY1+haloY);
+				this.blockX0 = blockX0 - x0;
+				this.blockX1 = blockX1 - x0;
+				this.blockY0 = blockY0 - y0;
+				this.blockY1 = blockY1 - y0;
+			}
+
+			int width(){
+				return x1-x0;
+			}
+
+			int height(){
+				return y1-y0;
+			}
+
+			/**Function buffer returns the array of the pixels of the part : buffer if it has their number, a new array otherwise.
+			 * The tiles of an image have the same size except at the borders, so the array is rarely created again.
+			 */
+			float [] buffer(float [] buffer){
+				int size = width()*height();
+				return buffer != null && buffer.length == size ? buffer : new float [size];
+			}
+		}
+	}
+}
@@ -1,3 +1,5 @@
+import java.util.Arrays;
+
 public class MathFunction {
 
 	/** Factorial Swing simple algorithm implementation
@@ -89,5 +91,58 @@ public class MathFunction {
 		return ret;
 	}
 
+	/**Return the upper tails of a binomial distribution with probability p and n trials.
+	 * tail[i] = Pr(X > i) = 1 - binoCDF(i,n,p), for i = 0..n (tail[n] = 0).
+	 * The whole vector is calculated in O(n) : the probability mass function is calculated once at the mode
+	 * (with logGamma) and then from its neighbour with pmf(k+1) = pmf(k) * (n-k)/(k+1) * p/(1-p),
+	 * and the tails are summed from the last (smallest) one, so the small tails keep their relative precision
+	 * instead of being 1 - (a number close to 1).
+	 * @param n -> number of trial
+	 * @param p -> probability of success
+	 * @return tail - array of n+1 values
+	 */
+	public static double [] binoTail(int n,double p){
+		double [] tail = new double [n+1];
+		if(p <= 0)
+			return tail;
+		if(p >= 1){
+			Arrays.fill(tail,0,n,1.0);
+			return tail;
+		}
+		double ratio = p / (1-p);
+		int mode = (int)Math.min(Math.floor((n+1)*p),n);
+		double [] pmf = new double [n+1];
+		pmf[mode] = Math.exp(Gamma.logGamma(n+1) - Gamma.logGamma(mode+1) - Gamma.logGamma(n-mode+1)
+				+ mode*Math.log(p) + (n-mode)*Math.log1p(-p));
+		//The pmf decreases on both sides of the mode, and underflows to 0 far from it.
+		for(int k = mode; k < n;k++)
+			pmf[k+1] = pmf[k] * (n-k) / (k+1) * ratio;
+		for(int k = mode; k > 0;k--)
+			pmf[k-1] = pmf[k] * k / (n-k+1) / ratio;
+		double sum = 0;
+		for(int i = n-1; i >= 0;i--){
+			sum += pmf[i+1];
+			tail[i] = Math.min(1.0,sum);
+		}
+		return tail;
+	}
 
+	/**Return the smallest i such that Pr(X > i) * scale <= limit, for a binomial distribution with probability p
+	 * and n trials. Pr(X > n) = 0, so the result is at most n.
+	 * Example : the smallest number of pixels above the noise in a mask of n pixels for which the expected number of
+	 * false positives in an image of scale pixels is lower than limit.
+	 * @param n -> number of trial
+	 * @param p -> probability of success
+	 * @param scale -> Multiplicator of the tail (number of draws of X)
+	 * @param limit -> Maximum value of Pr(X > i) * scale
+	 * @return i in [0,n]
+	 */
+	public static int binoTailInverse(int n,double p,double scale,double limit){
+		double [] tail = binoTail(n,p);
+		//The tails decrease with i.
+		int i = n;
+		while(i > 0 && tail[i-1] * scale <= limit)
+			i--;
+		return i;
+	}
 }
@@ -0,0 +1,147 @@
+/**Median filter for small kernels (up to 7x7) with sorting networks.
+ * The windows of neighbouring pixels overlap, so the work is shared between the pixels of a row instead of copying
+ * and sorting every window alone :
+ *
+ * 3x3 : every column is sorted with 3 min/max (low, middle, high). The median of the 9 pixels is then
+ * med3(max of the 3 lows, med3 of the 3 middles, min of the 3 highs), so a pixel costs 6 min/max instead of a
+ * copy of the window and a network of 19 compare-exchanges. The loops over the columns of a row have no branch
+ * and no dependency between columns, so they can be vectorized by the JIT compiler.
+ *
+ * Other sizes : the windows of CHUNK neighbouring pixels are filtered at once. Element (i,j) of these windows is a
+ * contiguous segment of a padded row (see Padding.Rows), so the windows are copied with System.arraycopy, one row of
+ * values per element, and every compare-exchange of the pruned network of SortingNetwork is applied to all the
+ * windows with a loop without branch.
+ *
+ * The result is the same median (n/2+1 smallest element) as MEDIAN_QUICKSELECT, except that -0 and +0 are not ordered.
+ *------ EFFICIENCY ------
+ *3x3 : 9 min/max per column + 6 min/max per pixel
+ *Other sizes : 1 copy per element of the window + the operations of the network per pixel, in vectorizable loops
+ * @author Jacques Boisvert
+ */
+public class NetworkMedian {
+
+	//Number of neighbouring pixels whose windows are filtered at once (the windows fit in the L1/L2 cache).
+	final static int CHUNK = 256;
+
+	/**Function isSupported returns true if the kernel is small enough for a network.
+	 *
+	 */
+	public static boolean isSupported(int filterWidth,int filterHeight){
+		return filterWidth*filterHeight <= SortingNetwork.MAX_SIZE;
+	}
+
+	/**Function filter calculates the median of a filterWidth x filterHeight kernel at every pixel of an image.
+	 *
+	 * @param pix - 32 bits float pixel array, not modified
+	 * @param imageWidth - image width
+	 * @param imageHeight - image height
+	 * @param filterWidth - filter width
+	 * @param filterHeight - filter height
+	 * @param paddingType - Padding.ANTISYMMETRIC, SYMMETRIC, REPLICATE or ZERO
+	 * @return medianArray - imageWidth x imageHeight median array
+	 */
+	public static float [] filter(float [] pix,int imageWidth,int imageHeight,int filterWidth,int filterHeight,int paddingType){
+		if(!isSupported(filterWidth,filterHeight))
+			throw new NumberIsTooLargeException(filterWidth*filterHeight,SortingNetwork.MAX_SIZE,true);
+		if(pix.length != imageWidth*imageHeight)
+			throw new DimensionMismatchException(pix.length,imageWidth*imageHeight);
+		Padding.validate(paddingType);
+		float [] medianArray = new float [imageWidth*imageHeight];
+		if(filterWidth == 3 && filterHeight == 3)
+			filter3x3(pix,imageWidth,imageHeight,paddingType,medianArray);
+		else
+			filterColumns(pix,imageWidth,imageHeight,filterWidth,filterHeight,paddingType,medianArray);
+		return medianArray;
+	}
+
+	/**Function filter3x3 calculates the 3x3 median with the sorted columns.
+	 *
+	 */
+	private static void filter3x3(float [] pix,int imageWidth,int imageHeight,int paddingType,float [] medianArray){
+		int paddedWidth = imageWidth + 2;
+		//Every band of rows reads the padded rows of its kernels in its own ring.
+		Parallel.forBands(imageHeight,(start,end) -> {
+			Padding.Rows rows = new Padding.Rows(pix,imageWidth,imageHeight,1,3,paddingType);
+			float [] paddedArray = rows.getBuffer();
+			float [] low = new float [paddedWidth];
+			float [] middle = new float [paddedWidth];
+			float [] high = new float [paddedWidth];
+			for(int row = start; row < end;row++){
+				//Padded rows row-1, row, row+1.
+				int top = rows.window(row-1,3);
+				int center = top + paddedWidth;
+				int bottom = center + paddedWidth;
+				for(int col = 0; col < paddedWidth;col++){
+					float a = paddedArray[top+col];
+					float b = paddedArray[center+col];
+					float c = paddedArray[bottom+col];
+					float minAB = Math.min(a,b);
+					float maxAB = Math.max(a,b);
+					low[col] = Math.min(minAB,c);
+					high[col] = Math.max(maxAB,c);
+					middle[col] = Math.max(minAB,Math.min(maxAB,c));
+				}
+				int offset = row*imageWidth;
+				for(int col = 0; col < imageWidth;col++){
+					float maxLow = Math.max(Math.max(low[col],low[col+1]),low[col+2]);
+					float minHigh = Math.min(Math.min(high[col],high[col+1]),high[col+2]);
+					float m0 = middle[col];
+					float m1 = middle[col+1];
+					float m2 = middle[col+2];
+					float medMiddle = Math.max(Math.min(m0,m1),Math.min(Math.max(m0,m1),m2));
+					medianArray[offset+col] = Math.max(Math.min(maxLow,medMiddle),Math.min(Math.max(maxLow,medMiddle),minHigh));
+				}
+			}
+		});
+	}
+
+	/**Function filterColumns calculates the median of CHUNK neighbouring pixels of a row at once.
+	 * Element (i,j) of the windows of the pixels col..col+CHUNK-1 is a contiguous segment of padded row row-filterHeight/2+i,
+	 * copied with System.arraycopy, and the network is applied to all the windows at once (see SortingNetwork).
+	 */
+	private static void filterColumns(float [] pix,int imageWidth,int imageHeight,int filterWidth,int filterHeight,int paddingType,float [] medianArray){
+		//Every band of rows reads the padded rows of its kernels in its own ring.
+		Parallel.forBands(imageHeight,(start,end) -> {
+			Padding.Rows rows = new Padding.Rows(pix,imageWidth,imageHeight,filterWidth/2,filterHeight,paddingType);
+			float [][] windows = newWindows(filterWidth,filterHeight);
+			for(int row = start; row < end;row++)
+				filterRow(rows,row,imageWidth,filterWidth,filterHeight,windows,medianArray,row*imageWidth);
+		});
+	}
+
+	/**Function filterRow calculates the medians of one row, CHUNK pixels at a time (see filterColumns).
+	 *
+	 * @param rows - padded rows of the image, with filterWidth/2 padding columns and at least filterHeight rows
+	 * @param row - row of the image
+	 * @param imageWidth - image width
+	 * @param filterWidth - filter width
+	 * @param filterHeight - filter height
+	 * @param windows - arrays of the windows, see newWindows
+	 * @param medianArray - array receiving the imageWidth medians
+	 * @param offset - index of the median of column 0 in medianArray
+	 */
+	static void filterRow(Padding.Rows rows,int row,int imageWidth,int filterWidth,int filterHeight,float [][] windows,
+			float [] medianArray,int offset){
+		float [] paddedArray = rows.getBuffer();
+		int paddedWidth = rows.getPaddedWidth();
+		int windowSize = filterWidth*filterHeight;
+		int top = rows.window(row - filterHeight/2,filterHeight);
+		for(int col = 0; col < imageWidth;col += CHUNK){
+			int length = Math.min(CHUNK,imageWidth-col);
+			for(int i = 0; i < filterHeight;i++){
+				int paddedOffset = top + i*paddedWidth + col;
+				for(int j = 0; j < filterWidth;j++)
+					System.arraycopy(paddedArray,paddedOffset+j,windows[i*filterWidth+j],0,length);
+			}
+			float [] medians = SortingNetwork.median(windows,windowSize,length);
+			System.arraycopy(medians,0,medianArray,offset+col,length);
+		}
+	}
+
+	/**Function newWindows returns the filterWidth*filterHeight arrays of CHUNK values used by filterRow.
+	 *
+	 */
+	static float [][] newWindows(int filterWidth,int filterHeight){
+		return new float [filterWidth*filterHeight][CHUNK];
+	}
+}
@@ -0,0 +1,259 @@
+/**Noise estimation of an image with the robust standard deviation of its third difference (see FiniteDifference and RobustStd),
+ * from all the differences or from a sample of them.
+ *
+ * SAMPLING
+ * The robust standard deviation of n independent values has a relative standard error of about 1.166/sqrt(n)
+ * (asymptotic variance 1.3605*sigma^2/n of the MAD estimator, the re-estimation on the inliers only reduces it).
+ * The sample size for a target relative error e is then (1.166/e)^2, whatever the image size : 13596 differences
+ * for 1%, 3399 for 2%. The differences are sampled on a regular (stratified) grid of the image, one at the center of
+ * every cell, so the sample covers the whole image and is the same for every call. Only the sampled differences are
+ * calculated, from their 4 x 4 pixels.
+ * The differences of cells closer than 4 pixels share pixels, so the error of a dense sample is a little higher than
+ * the estimate, which only happens when the sample is almost the whole image.
+ *------ EFFICIENCY ------
+ *All differences : 1 pass for the differences + 5 passes of RobustStd
+ *Sample : O(sample size), independent of the image size.
+ * @author Jacques Boisvert
+ */
+public class NoiseEstimator {
+
+	//Relative standard error of the robust standard deviation of 1 value.
+	public final static double RELATIVE_ERROR_FACTOR = 1.166;
+
+	/**Noise estimate of an image.
+	 *
+	 */
+	public static final class Estimate {
+		//Robust standard deviation of the third difference.
+		public final float std;
+		//Number of differences used.
+		public final int sampleSize;
+		//Number of differences of the image.
+		public final long populationSize;
+		//Relative standard error of std.
+		public final double relativeError;
+
+		Estimate(float std,int sampleSize,long populationSize){
+			this.std = std;
+			this.sampleSize = sampleSize;
+			this.populationSize = populationSize;
+			this.relativeError = relativeError(sampleSize);
+		}
+
+		/**Return true if std was estimated with a sample of the differences.
+		 *
+		 */
+		public boolean isSampled(){
+			return sampleSize < populationSize;
+		}
+
+		/**Return the half width of the confidence interval of std at z standard errors (z = 1.96 for 95%).
+		 *
+		 */
+		public double confidence(double z){
+			return z * relativeError * std;
+		}
+	}
+
+	/**Function estimate returns the noise estimate of an image.
+	 *
+	 * @param pix - 32 bits float pixel array, not modified
+	 * @param width - Image width, >= 4
+	 * @param height - Image height, >= 4
+	 * @param targetRelativeError - target relative standard error of the estimate, in ]0,1[, or 0 to use all the differences.
+	 * @return estimate
+	 */
+	public static Estimate estimate(float [] pix,int width,int height,double targetRelativeError){
+		if(targetRelativeError < 0 || targetRelativeError >= 1)
+			throw new OutOfRangeException(targetRelativeError,0,1);
+		if(targetRelativeError > 0){
+			int populationSize = (width-3)*(height-3);
+			int sampleSize = sampleSize(targetRelativeError);
+			//A sample of more than half of the image costs more than the whole image.
+			if(sampleSize < populationSize/2){
+				float [] sample = sample(pix,width,height,sampleSize);
+				return new Estimate(RobustStd.std(sample),sample.length,populationSize);
+			}
+		}
+		return estimate(FiniteDifference.thirdDifference(pix,width,height));
+	}
+
+	/**Function estimate returns the noise estimate of an integer image (foreground of an 8/16 bits image).
+	 * Same as the float version, with the integer differences.
+	 * @param pix - integer pixel array, not modified
+	 * @param width - Image width, >= 4
+	 * @param height - Image height, >= 4
+	 * @param targetRelativeError - target relative standard error of the estimate, in ]0,1[, or 0 to use all the differences.
+	 * @return estimate
+	 */
+	public static Estimate estimate(int [] pix,int width,int height,double targetRelativeError){
+		if(targetRelativeError < 0 || targetRelativeError >= 1)
+			throw new OutOfRangeException(targetRelativeError,0,1);
+		if(targetRelativeError > 0){
+			int populationSize = (width-3)*(height-3);
+			int sampleSize = sampleSize(targetRelativeError);
+			if(sampleSize < populationSize/2){
+				float [] sample = sample(pix,width,height,sampleSize);
+				return new Estimate(RobustStd.std(sample),sample.length,populationSize);
+			}
+		}
+		return estimate(FiniteDifference.thirdDifference(pix,width,height));
+	}
+
+	/**Function estimate returns the noise estimate from all the differences of an image.
+	 *
+	 * @param diffPix - third difference of the image (see FiniteDifference.thirdDifference), not modified
+	 * @return estimate
+	 */
+	public static Estimate estimate(float [] diffPix){
+		return new Estimate(RobustStd.std(diffPix),diffPix.length,diffPix.length);
+	}
+
+	/**Function sampleSize returns the number of differences giving a relative standard error of relativeError.
+	 *
+	 * @param relativeError - target relative standard error, > 0
+	 * @return sample size
+	 */
+	public static int sampleSize(double relativeError){
+		double size = Math.ceil(Math.pow(RELATIVE_ERROR_FACTOR/relativeError,2));
+		return (int)Math.min(size,Integer.MAX_VALUE);
+	}
+
+	/**Function relativeError returns the relative standard error of the estimate of a sample.
+	 *
+	 * @param sampleSize - number of differences
+	 * @return relative standard error
+	 */
+	public static double relativeError(int sampleSize){
+		return RELATIVE_ERROR_FACTOR / Math.sqrt(sampleSize);
+	}
+
+	/**Function sample returns the third differences at the centers of a regular grid with at least sampleSize cells.
+	 * The step of the grid is the same in x and y.
+	 * @param pix - 32 bits float pixel array, not modified
+	 * @param width - Image width, >= 4
+	 * @param height - Image height, >= 4
+	 * @param sampleSize - minimum number of differences (all the differences if larger than the image)
+	 * @return sample - third differences
+	 */
+	public static float [] sample(float [] pix,int width,int height,int sampleSize){
+		if(pix.length != width*height)
+			throw new DimensionMismatchException(pix.length,width*height);
+		return sample(width,height,sampleSize,(x,y) -> FiniteDifference.thirdDifferenceAt(pix,width,x,y));
+	}
+
+	/**Function sample returns the third differences of an integer image at the centers of a regular grid.
+	 * Same grid as the float version.
+	 * @param pix - integer pixel array, not modified
+	 * @param width - Image width, >= 4
+	 * @param height - Image height, >= 4
+	 * @param sampleSize - minimum number of differences (all the differences if larger than the image)
+	 * @return sample - third differences
+	 */
+	public static float [] sample(int [] pix,int width,int height,int sampleSize){
+		if(pix.length != width*height)
+			throw new DimensionMismatchException(pix.length,width*height);
+		return sample(width,height,sampleSize,(x,y) -> FiniteDifference.thirdDifferenceAt(pix,width,x,y));
+	}
+
+	/**Third difference at x,y of the image being sampled.
+	 *
+	 */
+	private interface Difference{
+		float at(int x,int y);
+	}
+
+	/**Regular grid of the third differences : the differences at (x0+col*step, y0+row*step) for col < nCols and row < nRows.
+	 * The difference at (x,y) is calculated from the pixels x..x+3, y..y+3 (see FiniteDifference.thirdDifferenceAt).
+	 */
+	static final class Grid{
+		final int step;
+		final int nCols;
+		final int nRows;
+		final int x0;
+		final int y0;
+		//Number of differences of the image.
+		final long populationSize;
+
+		/**Create the grid centered in an image with at least sampleSize cells.
+		 *
+		 */
+		Grid(int width,int height,long sampleSize){
+			if(width < 4)
+				throw new NumberIsTooSmallException(width,4,true);
+			if(height < 4)
+				throw new NumberIsTooSmallException(height,4,true);
+			int diffWidth = width-3;
+			int diffHeight = height-3;
+			int gridStep = Math.max(1,(int)Math.sqrt((double)diffWidth*diffHeight/sampleSize));
+			while(gridStep > 1 && (long)(diffWidth/gridStep)*(diffHeight/gridStep) < sampleSize)
+				gridStep--;
+			step = gridStep;
+			nCols = diffWidth/step;
+			nRows = diffHeight/step;
+			x0 = (diffWidth - (nCols-1)*step - 1)/2;
+			y0 = (diffHeight - (nRows-1)*step - 1)/2;
+			populationSize = (long)diffWidth*diffHeight;
+		}
+
+		/**Function row returns the row of the grid of the differences of image row y, or -1 if y is not a row of the grid.
+		 *
+		 */
+		int row(int y){
+			if(y < y0 || (y - y0) % step != 0 || (y - y0) / step >= nRows)
+				return -1;
+			return (y - y0) / step;
+		}
+
+		int size(){
+			return nCols*nRows;
+		}
+	}
+
+	/**Function grid returns the grid of the differences used by estimate for a target relative error :
+	 * a sample grid, or all the differences (step 1).
+	 * @param width - Image width, >= 4
+	 * @param height - Image height, >= 4
+	 * @param targetRelativeError - target relative standard error of the estimate, in ]0,1[, or 0 to use all the differences.
+	 * @return grid of the differences
+	 */
+	static Grid grid(int width,int height,double targetRelativeError){
+		if(targetRelativeError < 0 || targetRelativeError >= 1)
+			throw new OutOfRangeException(targetRelativeError,0,1);
+		long populationSize = (long)(width-3)*(height-3);
+		if(targetRelativeError > 0){
+			int sampleSize = sampleSize(targetRelativeError);
+			//Same choice as estimate.
+			if(sampleSize < populationSize/2)
+				return new Grid(width,height,sampleSize);
+		}
+		return new Grid(width,height,populationSize);
+	}
+
+	/**Function estimate returns the noise estimate of the differences of a grid.
+	 *
+	 * @param differences - differences of the grid, in any order, not modified
+	 * @param grid - grid of the differences
+	 * @return estimate
+	 */
+	static Estimate estimate(float [] differences,Grid grid){
+		return new Estimate(RobustStd.std(differences),differences.length,grid.populationSize);
+	}
+
+	/**Function sample returns the differences at the centers of a regular grid with at least sampleSize cells.
+	 *
+	 */
+	private static float [] sample(int width,int height,int sampleSize,Difference difference){
+		Grid grid = new Grid(width,height,sampleSize);
+		int nCols = grid.nCols;
+		float [] sample = new float [grid.size()];
+		Parallel.forBands(grid.nRows,(start,end) -> {
+			for(int row = start; row < end;row++){
+				int y = grid.y0 + row*grid.step;
+				for(int col = 0; col < nCols;col++)
+					sample[row*nCols+col] = difference.at(grid.x0+col*grid.step,y);
+			}
+		});
+		return sample;
+	}
+}
@@ -0,0 +1,151 @@
+/**Noise model persisting across the frames of a time-lapse.
+ * The camera noise is usually stationary, so it doesn't have to be estimated from scratch for every frame :
+ *  1. WARM-UP : the noise of the first warmupFrames frames is estimated with all the differences (NoiseEstimator),
+ *     and the model is their mean.
+ *  2. TRACKING : the noise of the next frames is estimated with a sample of the differences (sampleError), and the
+ *     model is updated with an exponentially weighted moving average : model = (1-alpha)*model + alpha*sample.
+ *  3. DRIFT TEST : if the sample is more than driftThreshold standard errors away from the model
+ *     (|sample - model| > driftThreshold * relativeError * model), the noise changed : the frame is estimated with
+ *     all the differences again and the model restarts from that estimate.
+ * The noise of a frame is the value of the model after its update.
+ *
+ * The model depends on the order of the frames, so the frames must be given in order (the plugin processes the slices
+ * one after the other when the noise is tracked). The methods are synchronized, so a tracker can be shared between threads.
+ *------ EFFICIENCY ------
+ *Warm-up and drift frames : all the differences (see NoiseEstimator)
+ *Other frames : O(sample size), (1.166/sampleError)^2 differences.
+ * @author Jacques Boisvert
+ */
+public class NoiseTracker {
+
+	public final static int DEFAULT_WARMUP_FRAMES = 3;
+	public final static double DEFAULT_ALPHA = 0.05;
+	public final static double DEFAULT_SAMPLE_ERROR = 0.02;
+	//About 1 false drift every 16000 frames for a normal error.
+	public final static double DEFAULT_DRIFT_THRESHOLD = 4;
+
+	private final int warmupFrames;
+	private final double alpha;
+	private final double sampleError;
+	private final double driftThreshold;
+
+	//Robust std of the third difference
+	private double model;
+	//Number of frames estimated with all the differences since the last reset.
+	private int nWarmup;
+	private int nFrames;
+	private int nDrifts;
+
+	/**Create a tracker with the default parameters.
+	 *
+	 */
+	public NoiseTracker(){
+		this(DEFAULT_WARMUP_FRAMES,DEFAULT_ALPHA,DEFAULT_SAMPLE_ERROR,DEFAULT_DRIFT_THRESHOLD);
+	}
+
+	/**Create a tracker.
+	 *
+	 * @param warmupFrames - Number of frames estimated with all the differences at the start, >= 1
+	 * @param alpha - Weight of a new sample in the moving average, in ]0,1]
+	 * @param sampleError - Target relative error of the sample of a tracked frame, in ]0,1[
+	 * @param driftThreshold - Number of standard errors between the sample and the model that triggers a new estimate, > 0
+	 */
+	public NoiseTracker(int warmupFrames,double alpha,double sampleError,double driftThreshold){
+		if(warmupFrames < 1)
+			throw new NumberIsTooSmallException(warmupFrames,1,true);
+		if(alpha <= 0 || alpha > 1)
+			throw new OutOfRangeException(alpha,0,1);
+		if(sampleError <= 0 || sampleError >= 1)
+			throw new OutOfRangeException(sampleError,0,1);
+		if(driftThreshold <= 0)
+			throw new NumberIsTooSmallException(driftThreshold,0,false);
+		this.warmupFrames = warmupFrames;
+		this.alpha = alpha;
+		this.sampleError = sampleError;
+		this.driftThreshold = driftThreshold;
+	}
+
+	/**Function update adds the next frame to the model and returns its noise estimate.
+	 *
+	 * @param pix - 32 bits float pixel array of the frame, not modified
+	 * @param width - Image width, >= 4
+	 * @param height - Image height, >= 4
+	 * @return estimate - std is the value of the model, the sample size is the one of the frame.
+	 */
+	public synchronized NoiseEstimator.Estimate update(float [] pix,int width,int height){
+		return update(error -> NoiseEstimator.estimate(pix,width,height,error));
+	}
+
+	/**Function update adds the next frame of an integer image (foreground of an 8/16 bits image) to the model.
+	 * Same as the float version.
+	 * @param pix - integer pixel array of the frame, not modified
+	 * @param width - Image width, >= 4
+	 * @param height - Image height, >= 4
+	 * @return estimate - std is the value of the model, the sample size is the one of the frame.
+	 */
+	public synchronized NoiseEstimator.Estimate update(int [] pix,int width,int height){
+		return update(error -> NoiseEstimator.estimate(pix,width,height,error));
+	}
+
+	/**Noise estimate of the frame being added, for a target relative error (0 = all the differences).
+	 *
+	 */
+	private interface Frame{
+		NoiseEstimator.Estimate estimate(double relativeError);
+	}
+
+	private NoiseEstimator.Estimate update(Frame frame){
+		nFrames++;
+		if(nWarmup < warmupFrames)
+			return warmup(frame);
+		NoiseEstimator.Estimate sample = frame.estimate(sampleError);
+		if(Math.abs(sample.std - model) > driftThreshold * sample.relativeError * model){
+			nDrifts++;
+			nWarmup = 0;
+			return warmup(frame);
+		}
+		model = (1-alpha)*model + alpha*sample.std;
+		return new NoiseEstimator.Estimate((float)model,sample.sampleSize,sample.populationSize);
+	}
+
+	/**Function warmup estimates the frame with all the differences and adds it to the mean of the warm-up frames.
+	 *
+	 */
+	private NoiseEstimator.Estimate warmup(Frame frame){
+		NoiseEstimator.Estimate estimate = frame.estimate(0);
+		nWarmup++;
+		model += (estimate.std - model) / nWarmup;
+		return new NoiseEstimator.Estimate((float)model,estimate.sampleSize,estimate.populationSize);
+	}
+
+	/**Function reset forgets the model. The next frames start a new warm-up.
+	 *
+	 */
+	public synchronized void reset(){
+		model = 0;
+		nWarmup = 0;
+		nFrames = 0;
+		nDrifts = 0;
+	}
+
+	/**Return the robust std of the third difference of the model (0 before the first frame).
+	 *
+	 */
+	public synchronized double getModel(){
+		return model;
+	}
+
+	/**Return the number of frames added to the model.
+	 *
+	 */
+	public synchronized int getFrames(){
+		return nFrames;
+	}
+
+	/**Return the number of drifts detected (frames estimated again with all the differences).
+	 *
+	 */
+	public synchronized int getDrifts(){
+		return nDrifts;
+	}
+}
@@ -0,0 +1,388 @@
+import java.util.Arrays;
+
+/**Virtual padding of an image for the filters.
+ * The filters read the pixels of a kernel around every pixel, so the kernels of the pixels near the borders go outside
+ * of the image. Instead of copying the whole image in a larger padded array, the padded values are calculated from
+ * the pixels of the image when they are read, with the padding rule :
+ *
+ * ANTISYMMETRIC : p(-d) = 2*p(0) - p(d), the slope at the border is continued.
+ * SYMMETRIC : p(-d) = p(d), mirror around the border pixel (the border pixel is not repeated).
+ * REPLICATE : p(-d) = p(0), the border pixel is repeated.
+ * ZERO : p(-d) = 0.
+ * NONE : no padding, the kernel shrinks to the pixels inside the image (mean filter only, see BoxFilter).
+ *
+ * The rule is applied in Y, then in X, so a corner is the padding in X of a padding row.
+ * If the padding is larger than the image, the mirrored distance d is limited to the last pixel of the image.
+ *
+ * The filters read the image through Rows, a ring of the last padded rows of a band : a row of the image is copied
+ * with System.arraycopy and only its padding columns are calculated, and a padding row is calculated from the 2 rows
+ * of the image it depends on. The rows of a kernel are contiguous in the ring, so the kernels run the same loops
+ * without any test of the borders as on a padded image, and the memory used is a few rows per band instead of a
+ * padded copy of the whole image. Rows also reads 8/16 bits images : their rows are converted to float (exactly)
+ * in the ring, so the filters don't need a float copy of the image. Any other image can be read row by row with a Source.
+ * @author Jacques Boisvert
+ */
+public class Padding {
+
+	public final static int NONE = -1;
+	public final static int ANTISYMMETRIC = 0;
+	public final static int SYMMETRIC = 1;
+	public final static int REPLICATE = 2;
+	public final static int ZERO = 3;
+
+	/**Rows of an image read one at a time, for the images that are not a pixel array
+	 * (8/16 bits images converted row by row, or strips streamed from a file or a scanner).
+	 */
+	public interface Source{
+		/**Function read copies row y of the image in dest.
+		 *
+		 * @param y - row, from 0 to height-1
+		 * @param dest - array receiving the width values of the row
+		 * @param destOffset - index of pixel 0 of the row in dest
+		 */
+		void read(int y,float [] dest,int destOffset);
+	}
+
+	/**Ring of the padded rows of an image used by a band of rows.
+	 * The ring keeps the last capacity rows read in one array, and every row is written twice (at slot and slot+capacity),
+	 * so any capacity consecutive rows of the ring are contiguous : window(y,n) returns the offset of row y, and row y+i
+	 * is at offset + i*(width+2*padX), as in a padded image. A kernel of filterHeight rows moving down calculates
+	 * 1 row per output row. A Rows is used by 1 thread.
+	 * The padded rows of a window only read the rows of the image inside the window (or the border rows and their mirrors
+	 * if the window is in the padding), so a Source is read in increasing order of rows with a look-back of capacity rows.
+	 */
+	public static class Rows{
+		//float [] pixels, or the rows of the other images (8/16 bits values are unsigned).
+		private final float [] pix;
+		private final Source source;
+		private final int width;
+		private final int height;
+		//Columns [x0,x0+columns[ of the image are read, with their padX columns on each side.
+		private final int x0;
+		private final int columns;
+		private final int padX;
+		private final int paddingType;
+		private final int paddedWidth;
+		private final int capacity;
+		private final float [] buffer;
+		private final int [] index;
+		//Border row of a Source for the antisymmetric padding rows.
+		private float [] edge;
+
+		/**Create a ring of padded rows.
+		 *
+		 * @param pix - 32 bits float pixel array, not modified
+		 * @param width - Image width
+		 * @param height - Image height
+		 * @param padX - Number of padding columns on each side
+		 * @param capacity - Number of rows of the ring, >= the number of rows used at the same time
+		 * @param paddingType - ANTISYMMETRIC, SYMMETRIC, REPLICATE or ZERO
+		 */
+		public Rows(float [] pix,int width,int height,int padX,int capacity,int paddingType){
+			this(pix,width,height,0,width,padX,capacity,paddingType);
+		}
+
+		/**Create a ring of the padded rows of the columns [x0,x1[ of an image (a tile and its halo).
+		 * The columns of the halo inside the image are the pixels of the image, the other ones are the padding of the image,
+		 * so the kernels of the tile see the same values as in the padded image. Pixel x0+i of a row is at index i+padX of its row.
+		 * @param pix - 32 bits float pixel array, not modified
+		 * @param width - Image width
+		 * @param height - Image height
+		 * @param x0 - First column
+		 * @param x1 - Last column (exclusive)
+		 * @param padX - Number of halo columns on each side
+		 * @param capacity - Number of rows of the ring, >= the number of rows used at the same time
+		 * @param paddingType - ANTISYMMETRIC, SYMMETRIC, REPLICATE or ZERO
+		 */
+		public Rows(float [] pix,int width,int height,int x0,int x1,int padX,int capacity,int paddingType){
+			this(pix,null,width,height,x0,x1,padX,capacity,paddingType);
+			if(pix.length != width*height)
+				throw new DimensionMismatchException(pix.length,width*height);
+			if(x0 < 0 || x0 >= x1)
+				throw new OutOfRangeException(x0,0,x1-1);
+			if(x1 > width)
+				throw new NumberIsTooLargeException(x1,width,true);
+		}
+
+		/**Create a ring of padded rows of a 16 bits image. The rows are converted to float (exactly) when they are read.
+		 *
+		 * @param pix - 16 bits pixel array (unsigned values), not modified
+		 */
+		public Rows(short [] pix,int width,int height,int padX,int capacity,int paddingType){
+			this(null,(y,dest,destOffset) -> {
+				int offset = y*width;
+				for(int i = 0; i < width;i++)
+					dest[destOffset+i] = pix[offset+i] & 0xffff;
+			},width,height,0,width,padX,capacity,paddingType);
+			if(pix.length != width*height)
+				throw new DimensionMismatchException(pix.length,width*height);
+		}
+
+		/**Create a ring of padded rows of an 8 bits image. The rows are converted to float (exactly) when they are read.
+		 *
+		 * @param pix - 8 bits pixel array (unsigned values), not modified
+		 */
+		public Rows(byte [] pix,int width,int height,int padX,int capacity,int paddingType){
+			this(null,(y,dest,destOffset) -> {
+				int offset = y*width;
+				for(int i = 0; i < width;i++)
+					dest[destOffset+i] = pix[offset+i] & 0xff;
+			},width,height,0,width,padX,capacity,paddingType);
+			if(pix.length != width*height)
+				throw new DimensionMismatchException(pix.length,width*height);
+		}
+
+		/**Create a ring of padded rows of an image read row by row.
+		 *
+		 * @param source - rows of the image
+		 */
+		public Rows(Source source,int width,int height,int padX,int capacity,int paddingType){
+			this(null,source,width,height,0,width,padX,capacity,paddingType);
+		}
+
+		private Rows(float [] pix,Source source,int width,int height,int x0,int x1,int padX,int capacity,int paddingType){
+			validate(paddingType);
+			if(capacity < 1)
+				throw new NumberIsTooSmallException(capacity,1,true);
+			this.pix = pix;
+			this.source = source;
+			this.width = width;
+			this.height = height;
+			this.x0 = x0;
+			this.columns = x1 - x0;
+			this.padX = padX;
+			this.paddingType = paddingType;
+			this.capacity = capacity;
+			paddedWidth = columns + 2*padX;
+			buffer = new float [2*capacity*paddedWidth];
+			index = new int [capacity];
+			Arrays.fill(index,Integer.MIN_VALUE);
+		}
+
+		/**Create a ring of padded rows of a float, short or byte pixel array, or of a Source.
+		 *
+		 */
+		static Rows of(Object pix,int width,int height,int padX,int capacity,int paddingType){
+			if(pix instanceof short [])
+				return new Rows((short [])pix,width,height,padX,capacity,paddingType);
+			if(pix instanceof byte [])
+				return new Rows((byte [])pix,width,height,padX,capacity,paddingType);
+			if(pix instanceof Source)
+				return new Rows((Source)pix,width,height,padX,capacity,paddingType);
+			return new Rows((float [])pix,width,height,padX,capacity,paddingType);
+		}
+
+		/**Function window reads the padded rows [y,y+n[ and returns the offset of row y in getBuffer().
+		 * Row y+i is at offset + i*getPaddedWidth(), and pixel x of the image is at index x-x0+padX of its row.
+		 * The rows stay valid until a row outside of [y+n-capacity,y+capacity[ is read.
+		 * @param y - first row, may be outside of [0,height[
+		 * @param n - number of rows, <= capacity
+		 * @return offset of row y
+		 */
+		public int window(int y,int n){
+			if(n > capacity)
+				throw new NumberIsTooLargeException(n,capacity,true);
+			for(int i = 0; i < n;i++){
+				int slot = Math.floorMod(y+i,capacity);
+				if(index[slot] != y+i){
+					load(y+i,slot*paddedWidth);
+					System.arraycopy(buffer,slot*paddedWidth,buffer,(slot+capacity)*paddedWidth,paddedWidth);
+					index[slot] = y+i;
+				}
+			}
+			return Math.floorMod(y,capacity)*paddedWidth;
+		}
+
+		/**Function load calculates padded row y at offset of the buffer.
+		 *
+		 */
+		private void load(int y,int offset){
+			if(source == null && columns == width){
+				row(pix,width,height,y,padX,paddingType,buffer,offset);
+				return;
+			}
+			if(source == null){
+				//Halo columns inside the image, then the padding columns of the image.
+				int start = Math.max(0,x0-padX);
+				int end = Math.min(width,x0+columns+padX);
+				segment(pix,width,height,y,start,end,paddingType,buffer,offset + start-(x0-padX));
+				for(int x = x0-padX; x < start;x++)
+					buffer[offset + x-(x0-padX)] = value(pix,width,height,x,y,paddingType);
+				for(int x = end; x < x0+columns+padX;x++)
+					buffer[offset + x-(x0-padX)] = value(pix,width,height,x,y,paddingType);
+				return;
+			}
+			int left = offset + padX;
+			if(y >= 0 && y < height)
+				source.read(y,buffer,left);
+			else if(paddingType == ANTISYMMETRIC){
+				if(edge == null)
+					edge = new float [width];
+				source.read(edgeRow(y,height),edge,0);
+				source.read(mirroredRow(y,height),buffer,left);
+				for(int i = 0; i < width;i++)
+					buffer[left+i] = 2*edge[i] - buffer[left+i];
+			}
+			else if(paddingType == SYMMETRIC)
+				source.read(mirroredRow(y,height),buffer,left);
+			else if(paddingType == REPLICATE)
+				source.read(edgeRow(y,height),buffer,left);
+			else
+				Arrays.fill(buffer,left,left+width,0);
+			padColumns(buffer,left,width,padX,paddingType);
+		}
+
+		/**Return the array of the rows. It must not be modified.
+		 *
+		 */
+		public float [] getBuffer(){
+			return buffer;
+		}
+
+		/**Return the length of a padded row, x1-x0+2*padX.
+		 *
+		 */
+		public int getPaddedWidth(){
+			return paddedWidth;
+		}
+	}
+
+	/**Function validate throws an exception if paddingType is not a padding rule.
+	 *
+	 */
+	public static void validate(int paddingType){
+		if(paddingType < ANTISYMMETRIC || paddingType > ZERO)
+			throw new OutOfRangeException(paddingType,ANTISYMMETRIC,ZERO);
+	}
+
+	/**Function value returns the value of the padded image at position (x,y).
+	 *
+	 * @param pix - 32 bits float pixel array, not modified
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param x - column, may be outside of [0,width[
+	 * @param y - row, may be outside of [0,height[
+	 * @param paddingType - ANTISYMMETRIC, SYMMETRIC, REPLICATE or ZERO
+	 * @return padded value
+	 */
+	public static float value(float [] pix,int width,int height,int x,int y,int paddingType){
+		if(x < 0)
+			return rule(columnValue(pix,width,height,0,y,paddingType),columnValue(pix,width,height,mirror(-x,width),y,paddingType),paddingType);
+		if(x >= width)
+			return rule(columnValue(pix,width,height,width-1,y,paddingType),
+					columnValue(pix,width,height,width-1-mirror(x-width+1,width),y,paddingType),paddingType);
+		return columnValue(pix,width,height,x,y,paddingType);
+	}
+
+	/**Function columnValue returns the value of column x of the image padded in Y at row y.
+	 *
+	 */
+	private static float columnValue(float [] pix,int width,int height,int x,int y,int paddingType){
+		if(y < 0)
+			return rule(pix[x],pix[mirror(-y,height)*width+x],paddingType);
+		if(y >= height)
+			return rule(pix[(height-1)*width+x],pix[(height-1-mirror(y-height+1,height))*width+x],paddingType);
+		return pix[y*width+x];
+	}
+
+	/**Function row calculates row y of the padded image.
+	 *
+	 * @param pix - 32 bits float pixel array, not modified
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param y - row, may be outside of [0,height[
+	 * @param padX - Number of padding columns on each side
+	 * @param paddingType - ANTISYMMETRIC, SYMMETRIC, REPLICATE or ZERO
+	 * @param dest - array receiving the width+2*padX values of the row
+	 * @param destOffset - index of the first padding column in dest. Pixel x of the image is at index destOffset+padX+x.
+	 */
+	public static void row(float [] pix,int width,int height,int y,int padX,int paddingType,float [] dest,int destOffset){
+		segment(pix,width,height,y,0,width,paddingType,dest,destOffset+padX);
+		padColumns(dest,destOffset+padX,width,padX,paddingType);
+	}
+
+	/**Function padColumns calculates the padX padding columns on each side of a row whose first pixel is at left.
+	 *
+	 */
+	private static void padColumns(float [] row,int left,int width,int padX,int paddingType){
+		int right = left + width - 1;
+		for(int d = 1; d <= padX;d++){
+			int m = mirror(d,width);
+			row[left-d] = rule(row[left],row[left+m],paddingType);
+			row[right+d] = rule(row[right],row[right-m],paddingType);
+		}
+	}
+
+	/**Function segment copies the columns [start,end[ of row y of the image padded in Y only.
+	 * A row of the image is copied, and a padding row is calculated from the border row and the mirrored row.
+	 * @param pix - 32 bits float pixel array, not modified
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param y - row, may be outside of [0,height[
+	 * @param start - first column
+	 * @param end - last column (exclusive)
+	 * @param paddingType - ANTISYMMETRIC, SYMMETRIC, REPLICATE or ZERO
+	 * @param dest - array receiving the end-start values
+	 * @param destOffset - index of column start in dest
+	 */
+	public static void segment(float [] pix,int width,int height,int y,int start,int end,int paddingType,float [] dest,int destOffset){
+		int length = end - start;
+		if(y >= 0 && y < height){
+			System.arraycopy(pix,y*width+start,dest,destOffset,length);
+			return;
+		}
+		int edgeOffset = edgeRow(y,height)*width + start;
+		int mirroredOffset = mirroredRow(y,height)*width + start;
+		switch(paddingType){
+		case ANTISYMMETRIC:
+			for(int i = 0; i < length;i++)
+				dest[destOffset+i] = 2*pix[edgeOffset+i] - pix[mirroredOffset+i];
+			break;
+		case SYMMETRIC:
+			System.arraycopy(pix,mirroredOffset,dest,destOffset,length);
+			break;
+		case REPLICATE:
+			System.arraycopy(pix,edgeOffset,dest,destOffset,length);
+			break;
+		default:
+			Arrays.fill(dest,destOffset,destOffset+length,0);
+		}
+	}
+
+	/**Function rule returns the padded value at distance d of the border from the border value and the value at distance d inside.
+	 *
+	 */
+	private static float rule(float edge,float mirrored,int paddingType){
+		switch(paddingType){
+		case ANTISYMMETRIC:
+			return 2*edge - mirrored;
+		case SYMMETRIC:
+			return mirrored;
+		case REPLICATE:
+			return edge;
+		default:
+			return 0;
+		}
+	}
+
+	/**Function edgeRow returns the border row of the image closest to padding row y.
+	 *
+	 */
+	private static int edgeRow(int y,int height){
+		return y < 0 ? 0 : height-1;
+	}
+
+	/**Function mirroredRow returns the row of the image at the same distance from the border as padding row y.
+	 *
+	 */
+	private static int mirroredRow(int y,int height){
+		return y < 0 ? mirror(-y,height) : height-1-mirror(y-height+1,height);
+	}
+
+	/**Function mirror returns the distance of the mirrored pixel inside of an image of length pixels.
+	 *
+	 */
+	private static int mirror(int d,int length){
+		return Math.min(d,length-1);
+	}
+}
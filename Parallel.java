@@ -0,0 +1,203 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+/**Parallel execution of the image stages by bands.
+ * An image of height rows is divided in contiguous bands of rows (or columns), and every band is processed
+ * by one task. A band only writes its own rows of the output, but may read the rows of its neighbours
+ * (the halo, equal to the kernel radius) in the shared input array. Since every output pixel is calculated
+ * by the same code in the same order than with a single band, the result is bit-identical to the serial path.
+ *
+ * By default the bands run on the common ForkJoinPool. Any ExecutorService can be used instead with setExecutor,
+ * and setParallelism(1) gives back the serial execution.
+ * The maximum number of bands can also be chosen for one call (see withParallelism, and the parallelism of
+ * SegmentationParams) : it applies to every forBands of the call, also the ones nested in its bands, without changing
+ * the default of the other calls running at the same time.
+ * Note : With an ExecutorService that is not a ForkJoinPool, forBands must not be called from a thread of that
+ * 		  executor since the calling thread waits for the bands.
+ * @author Jacques Boisvert
+ */
+public class Parallel {
+
+	/**A band of rows (or columns) [start,end[ to process.
+	 *
+	 */
+	public interface Band{
+		void process(int start,int end);
+	}
+
+	//Smallest number of rows processed by a task.
+	public final static int DEFAULT_MIN_BAND = 16;
+
+	private static volatile ExecutorService executor = ForkJoinPool.commonPool();
+	private static volatile int parallelism = Math.max(1,ForkJoinPool.getCommonPoolParallelism());
+	//Maximum number of bands of the call running in the thread (see withParallelism), null for the default.
+	private static final ThreadLocal<Integer> callParallelism = new ThreadLocal<Integer>();
+
+	/**Function setExecutor changes the executor used to process the bands.
+	 *
+	 * @param executorService - Executor running the bands. ForkJoinPool can be nested safely.
+	 * @param nThreads - Maximum number of bands processed at the same time.
+	 */
+	public static void setExecutor(ExecutorService executorService,int nThreads){
+		if(executorService == null)
+			throw new MathIllegalArgumentException(LocalizedFormats.NULL_NOT_ALLOWED);
+		executor = executorService;
+		setParallelism(nThreads);
+	}
+
+	/**Function setParallelism sets the default maximum number of bands, used by the calls without their own
+	 * (see withParallelism). 1 gives the serial execution.
+	 *
+	 * @param nThreads - Maximum number of bands.
+	 */
+	public static void setParallelism(int nThreads){
+		if(nThreads < 1)
+			throw new NumberIsTooSmallException(nThreads,1,true);
+		parallelism = nThreads;
+	}
+
+	/**Return the maximum number of bands of the calls of the current thread.
+	 *
+	 */
+	public static int getParallelism(){
+		Integer nThreads = callParallelism.get();
+		return nThreads == null ? parallelism : nThreads;
+	}
+
+	/**Function withParallelism runs a call with its own maximum number of bands. The other threads keep theirs.
+	 *
+	 * @param nThreads - Maximum number of bands of the call, 0 for the current one (see getParallelism).
+	 * @param call - call to run in the current thread
+	 * @return the value returned by the call
+	 */
+	public static <T> T withParallelism(int nThreads,Supplier<T> call){
+		if(nThreads < 0)
+			throw new NumberIsTooSmallException(nThreads,0,true);
+		if(nThreads == 0)
+			return call.get();
+		Integer previous = callParallelism.get();
+		callParallelism.set(nThreads);
+		try{
+			return call.get();
+		}finally{
+			callParallelism.set(previous);
+		}
+	}
+
+	/**Function process processes a band in the current thread, with the maximum number of bands of the call that created it.
+	 *
+	 */
+	private static void process(Band band,int start,int end,Integer nThreads){
+		Integer previous = callParallelism.get();
+		callParallelism.set(nThreads);
+		try{
+			band.process(start,end);
+		}finally{
+			callParallelism.set(previous);
+		}
+	}
+
+	/**Function forBands splits [0,length[ in bands of at least minBand elements and processes them concurrently.
+	 * The function returns when every band has been processed.
+	 * @param length - Number of rows (or columns) to process.
+	 * @param minBand - Smallest number of rows of a band.
+	 * @param band - band to process
+	 */
+	public static void forBands(int length,int minBand,Band band){
+		Integer nThreads = callParallelism.get();
+		int nBands = Math.min(nThreads == null ? parallelism : nThreads,length / Math.max(1,minBand));
+		if(nBands <= 1){
+			band.process(0,length);
+			return;
+		}
+		ExecutorService ex = executor;
+		if(ex instanceof ForkJoinPool){
+			ForkJoinPool pool = (ForkJoinPool)ex;
+			BandAction action = new BandAction(band,length,nBands,0,nBands,nThreads);
+			if(ForkJoinTask.getPool() == pool)
+				action.invoke();//Already in a task of the pool (nested call).
+			else
+				pool.invoke(action);
+			return;
+		}
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(nBands);
+		for(int i = 0; i < nBands;i++){
+			final int start = bandStart(length,nBands,i);
+			final int end = bandStart(length,nBands,i+1);
+			tasks.add(() -> {
+				process(band,start,end,nThreads);
+				return null;
+			});
+		}
+		try{
+			for(Future<Object> f : ex.invokeAll(tasks))
+				f.get();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new MathIllegalStateException(e,LocalizedFormats.SIMPLE_MESSAGE,e.toString());
+		}catch(ExecutionException e){
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if(cause instanceof Error)
+				throw (Error)cause;
+			throw new MathIllegalStateException(cause,LocalizedFormats.SIMPLE_MESSAGE,cause.toString());
+		}
+	}
+
+	/**Function forBands splits [0,length[ in bands of at least DEFAULT_MIN_BAND elements and processes them concurrently.
+	 *
+	 * @param length - Number of rows (or columns) to process.
+	 * @param band - band to process
+	 */
+	public static void forBands(int length,Band band){
+		forBands(length,DEFAULT_MIN_BAND,band);
+	}
+
+	/**Return the first element of band i when length elements are divided in nBands bands.
+	 *
+	 */
+	private static int bandStart(int length,int nBands,int i){
+		return (int)((long)length * i / nBands);
+	}
+
+	/**Recursive splitting of the bands for the ForkJoinPool.
+	 *
+	 */
+	private static class BandAction extends RecursiveAction{
+		private static final long serialVersionUID = 1L;
+		private final Band band;
+		private final int length;
+		private final int nBands;
+		private final int first;
+		private final int last;
+		private final Integer nThreads;
+
+		BandAction(Band band,int length,int nBands,int first,int last,Integer nThreads){
+			this.band = band;
+			this.length = length;
+			this.nBands = nBands;
+			this.first = first;
+			this.last = last;
+			this.nThreads = nThreads;
+		}
+
+		@Override
+		protected void compute(){
+			if(last - first == 1){
+				process(band,bandStart(length,nBands,first),bandStart(length,nBands,last),nThreads);
+				return;
+			}
+			int middle = (first + last) / 2;
+			invokeAll(new BandAction(band,length,nBands,first,middle,nThreads),new BandAction(band,length,nBands,middle,last,nThreads));
+		}
+	}
+}
@@ -0,0 +1,443 @@
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**Benchmarks of every stage of the segmentation pipeline.
+ * The segmentation classes live in the default package, which JMH cannot generate benchmarks for,
+ * so this harness applies the same methodology itself : warmup iterations, measured iterations, per-invocation
+ * setup excluded from the measure (the destructive selections get a fresh copy of their input) and a volatile
+ * sink so the JIT cannot remove the benchmarked calls.
+ *
+ * Images are generated with a smooth background, gaussian spots and one of the noise models :
+ * gaussian  - float data with additive gaussian noise
+ * poisson   - integer camera counts (16 bits) with shot noise
+ * saturated - 8 bits data with large flat regions of 0 and 255 (many duplicated values)
+ *
+ * Usage : java -Xmx8g -cp ij.jar:. PipelineBenchmark [options]
+ * -size 512,1024,2048,4096    image width/height
+ * -kernel 3,5,9,15,31,51      filter sizes
+ * -noise gaussian,poisson,saturated
+ * -filter regex               only run the benchmarks whose name matches
+ * -warmup 3 -iterations 5     number of iterations
+ * -threads n                  Parallel.setParallelism
+ * -budget 2e9                 skip the benchmarks doing more operations per call (e.g. QuickSelect median 51x51 on 4096^2)
+ * @author Jacques Boisvert
+ */
+public class PipelineBenchmark {
+
+	//Keeps the JIT from removing the benchmarked calls.
+	private static volatile Object sink;
+
+	private static int [] sizes = {512,2048};
+	private static int [] kernels = {3,9,31};
+	private static String [] noises = {"gaussian","poisson","saturated"};
+	private static Pattern filter = Pattern.compile(".*");
+	private static int warmup = 3;
+	private static int iterations = 5;
+	private static double budget = 2e9;
+
+	/**A benchmarked call.
+	 *
+	 */
+	private static abstract class Case{
+		final String name;
+		final String params;
+		final double work;//Approximate number of operations of one call.
+
+		Case(String name,String params,double work){
+			this.name = name;
+			this.params = params;
+			this.work = work;
+		}
+		//Called before every call, not measured.
+		void setup(){
+		}
+		abstract Object run();
+	}
+
+	public static void main(String [] args){
+		for(int i = 0; i+1 < args.length;i += 2){
+			String value = args[i+1];
+			if(args[i].equals("-size"))
+				sizes = parseInts(value);
+			else if(args[i].equals("-kernel"))
+				kernels = parseInts(value);
+			else if(args[i].equals("-noise"))
+				noises = value.split(",");
+			else if(args[i].equals("-filter"))
+				filter = Pattern.compile(value);
+			else if(args[i].equals("-warmup"))
+				warmup = Integer.parseInt(value);
+			else if(args[i].equals("-iterations"))
+				iterations = Integer.parseInt(value);
+			else if(args[i].equals("-threads"))
+				Parallel.setParallelism(Integer.parseInt(value));
+			else if(args[i].equals("-budget"))
+				budget = Double.parseDouble(value);
+			else
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+		}
+		System.out.println("threads : " + Parallel.getParallelism());
+		System.out.println(String.format("%-36s %-34s %12s %10s %12s","Benchmark","Params","ms/op","error","min"));
+		for(int size : sizes){
+			for(String noise : noises){
+				float [] pix = createImage(size,size,noise,42);
+				for(Case c : createCases(pix,size,size,noise)){
+					if(filter.matcher(c.name).find())
+						measure(c);
+				}
+			}
+		}
+	}
+
+	/**Function createCases creates the benchmarks of every stage for one image.
+	 *
+	 */
+	private static List<Case> createCases(final float [] pix,final int width,final int height,String noise){
+		List<Case> cases = new ArrayList<Case>();
+		final int n = width*height;
+		String image = width + "x" + height + " " + noise;
+		final FloatProcessor ip = new FloatProcessor(width,height,pix);
+
+		final IntegralImage integral = new IntegralImage(pix,width,height);
+		final short [] shortPix = new short [n];
+		for(int i = 0; i < n;i++)
+			shortPix[i] = (short)Math.max(0,Math.min(65535,(int)pix[i]));
+		cases.add(new Case("IntegralImage build",image,n*2){
+			Object run(){
+				return new IntegralImage(pix,width,height);
+			}
+		});
+		for(final int k : kernels){
+			String params = image + " k=" + k;
+			cases.add(new Case("Filter.medianFilter QuickSelect",params,(double)n*k*k){
+				Object run(){
+					return Filter.medianFilter(ip,k,k,0,Filter.MEDIAN_QUICKSELECT);
+				}
+			});
+			if(NetworkMedian.isSupported(k,k)){
+				cases.add(new Case("Filter.medianFilter Network",params,(double)n*k*k){
+					Object run(){
+						return Filter.medianFilter(ip,k,k,0,Filter.MEDIAN_NETWORK);
+					}
+				});
+			}
+			cases.add(new Case("Filter.medianFilter Histogram",params,(double)n*k*2){
+				Object run(){
+					return Filter.medianFilter(ip,k,k,0,Filter.MEDIAN_HISTOGRAM);
+				}
+			});
+			for(final int factor : new int [] {2,4,8}){
+				if(PyramidMedian.reducedKernel(k,factor) >= k)
+					continue;
+				int reduced = PyramidMedian.reducedKernel(k,factor);
+				cases.add(new Case("PyramidMedian x" + factor + " QuickSelect",params,(double)n*reduced*reduced/(factor*factor)){
+					Object run(){
+						return PyramidMedian.medianFilter(ip,k,k,0,Filter.MEDIAN_QUICKSELECT,factor);
+					}
+				});
+			}
+			cases.add(new Case("Filter.meanFastFilter",params,n){
+				Object run(){
+					return Filter.meanFastFilter(ip,k,k);
+				}
+			});
+			cases.add(new Case("Filter.meanFastFilter antisymmetric",params,n){
+				Object run(){
+					return Filter.meanFastFilter(ip,k,k,Padding.ANTISYMMETRIC);
+				}
+			});
+			cases.add(new Case("BitMask threshold+countThreshold",params,n){
+				Object run(){
+					return BitMask.threshold(pix,width,height,600).countThreshold(k,k,k*k/2);
+				}
+			});
+			cases.add(new Case("IntegralImage.mean",params,n){
+				Object run(){
+					return integral.mean(k,k);
+				}
+			});
+			cases.add(new Case("Padding.Rows (every padded row)",params,n){
+				Object run(){
+					Padding.Rows rows = new Padding.Rows(pix,width,height,k/2,k,Padding.ANTISYMMETRIC);
+					float sum = 0;
+					for(int row = -(k/2); row < height+k/2;row++)
+						sum += rows.getBuffer()[rows.window(row,1)];
+					return sum;
+				}
+			});
+			cases.add(new Case("Segmenter.thresholdIndex",params,k*k){
+				Object run(){
+					return Segmenter.thresholdIndex(k*k,n,1.3,0.5);
+				}
+			});
+			cases.add(new Case("ThresholdTable.compute (uncached)",params,k*k){
+				Object run(){
+					return ThresholdTable.compute(k*k,n,1.3,0.5);
+				}
+			});
+			final SegmentationParams segParams = new SegmentationParams(0.5,1.3,k,k,5,5);
+			cases.add(new Case("Segmenter.segment bgKernel",params,(double)n*k*2){
+				Object run(){
+					return Segmenter.segment(pix,width,height,segParams);
+				}
+			});
+			final SegmentationParams tiledParams = segParams.withTileSize(TiledSegmenter.TILE_AUTO);
+			cases.add(new Case("Segmenter.segment tiled",params,(double)n*k*2){
+				Object run(){
+					return Segmenter.segment(pix,width,height,tiledParams);
+				}
+			});
+			cases.add(new Case("StreamSegmenter.segment",params,(double)n*k*2){
+				Object run(){
+					final byte [] mask = new byte [n];
+					StreamSegmenter.segment((y,dest,destOffset) -> System.arraycopy(pix,y*width,dest,destOffset,width),width,height,segParams,
+							(y,maskRow) -> System.arraycopy(maskRow,0,mask,y*width,width));
+					return mask;
+				}
+			});
+			cases.add(new Case("LargeImageSegmenter.segment",params,(double)n*k*2){
+				Object run(){
+					final byte [] mask = new byte [n];
+					LargeImageSegmenter.segment((x,y,tileWidth,tileHeight,dest) -> {
+						for(int j = 0; j < tileHeight;j++)
+							System.arraycopy(pix,(y+j)*width+x,dest,j*tileWidth,tileWidth);
+					},width,height,segParams,(x,y,tileMask) -> {
+						byte [] tilePix = tileMask.toBytes();
+						for(int j = 0; j < tileMask.getHeight();j++)
+							System.arraycopy(tilePix,j*tileMask.getWidth(),mask,(y+j)*width+x,tileMask.getWidth());
+					});
+					return mask;
+				}
+			});
+			cases.add(new Case("Segmenter.segmentDetailed 16 bits",params,(double)n*k*2){
+				Object run(){
+					return Segmenter.segmentDetailed(shortPix,width,height,segParams,null);
+				}
+			});
+			cases.addAll(createSelectCases(pix,params,k*k));
+		}
+		final SegmentationParams sweepParams = new SegmentationParams(0.5,1.3,15,15,5,5);
+		cases.add(new Case("Segmenter.segmentSweep",image + " all kernels",(double)n*kernels.length){
+			Object run(){
+				return Segmenter.segmentSweep(pix,width,height,sweepParams,kernels,kernels);
+			}
+		});
+		cases.add(new Case("Segmenter.segment per kernel",image + " all kernels",(double)n*kernels.length){
+			Object run(){
+				byte [][] masks = new byte [kernels.length][];
+				for(int i = 0; i < kernels.length;i++)
+					masks[i] = Segmenter.segment(pix,width,height,sweepParams.withImgKernel(kernels[i],kernels[i]));
+				return masks;
+			}
+		});
+		cases.addAll(createSelectCases(pix,image + " full frame",n));
+		cases.add(new Case("RadixSelect.median float",image + " full frame",n*2){
+			Object run(){
+				return RadixSelect.median(pix);
+			}
+		});
+		cases.add(new Case("RadixSelect.median short",image + " full frame",n){
+			Object run(){
+				return RadixSelect.median(shortPix);
+			}
+		});
+
+		cases.add(new Case("Segmenter.diffRow/diffCol",image,n*6){
+			Object run(){
+				return Segmenter.diffCol(Segmenter.diffRow(ip,3),3);
+			}
+		});
+		cases.add(new Case("FiniteDifference.thirdDifference",image,n*2){
+			Object run(){
+				return FiniteDifference.thirdDifference(pix,width,height);
+			}
+		});
+		cases.add(new Case("NoiseEstimator all differences",image,n*7){
+			Object run(){
+				return NoiseEstimator.estimate(pix,width,height,0);
+			}
+		});
+		for(final double error : new double [] {0.01,0.02}){
+			cases.add(new Case("NoiseEstimator sample " + (int)(error*100) + "%",image,NoiseEstimator.sampleSize(error)*5.0){
+				Object run(){
+					return NoiseEstimator.estimate(pix,width,height,error);
+				}
+			});
+		}
+		final float [] diffPix = (float [])Segmenter.diffCol(Segmenter.diffRow(ip,3),3).getPixels();
+		cases.add(new Case("Segmenter.getStd",image,n*4){
+			ImageProcessor diffIp;
+			void setup(){
+				diffIp = new FloatProcessor(width-3,height-3,diffPix.clone());
+			}
+			Object run(){
+				return Segmenter.getStd(diffIp);
+			}
+		});
+		return cases;
+	}
+
+	/**Function createSelectCases creates the benchmarks of QuickSelect.select for every primitive type.
+	 * The array is divided in chunks of chunkSize elements and the median of every chunk is selected,
+	 * so the benchmark covers the kernel sizes (chunkSize = k*k) and the full frame (chunkSize = n).
+	 */
+	private static List<Case> createSelectCases(float [] pix,String params,final int chunkSize){
+		List<Case> cases = new ArrayList<Case>();
+		final int n = pix.length - pix.length % chunkSize;
+		final float [] floatPix = new float [n];
+		final int [] intPix = new int [n];
+		final short [] shortPix = new short [n];
+		final byte [] bytePix = new byte [n];
+		for(int i = 0; i < n;i++){
+			floatPix[i] = pix[i];
+			intPix[i] = (int)pix[i];
+			shortPix[i] = (short)Math.max(0,Math.min(65535,(int)pix[i]));
+			bytePix[i] = (byte)Math.max(0,Math.min(255,(int)pix[i]));
+		}
+		cases.add(new Case("QuickSelect.select float",params,n){
+			float [] arr;
+			void setup(){
+				arr = floatPix.clone();
+			}
+			Object run(){
+				float sum = 0;
+				for(int i = 0; i < n;i += chunkSize)
+					sum += QuickSelect.select(arr,i,i+chunkSize-1,chunkSize/2+1);
+				return sum;
+			}
+		});
+		cases.add(new Case("QuickSelect.select int",params,n){
+			int [] arr;
+			void setup(){
+				arr = intPix.clone();
+			}
+			Object run(){
+				long sum = 0;
+				for(int i = 0; i < n;i += chunkSize)
+					sum += QuickSelect.select(arr,i,i+chunkSize-1,chunkSize/2+1);
+				return sum;
+			}
+		});
+		cases.add(new Case("QuickSelect.select short",params,n){
+			short [] arr;
+			void setup(){
+				arr = shortPix.clone();
+			}
+			Object run(){
+				long sum = 0;
+				for(int i = 0; i < n;i += chunkSize)
+					sum += QuickSelect.select(arr,i,i+chunkSize-1,chunkSize/2+1);
+				return sum;
+			}
+		});
+		cases.add(new Case("QuickSelect.select byte",params,n){
+			byte [] arr;
+			void setup(){
+				arr = bytePix.clone();
+			}
+			Object run(){
+				long sum = 0;
+				for(int i = 0; i < n;i += chunkSize)
+					sum += QuickSelect.select(arr,i,i+chunkSize-1,chunkSize/2+1);
+				return sum;
+			}
+		});
+		return cases;
+	}
+
+	/**Function measure runs the warmup and measured iterations of a benchmark and prints the result.
+	 *
+	 */
+	private static void measure(Case c){
+		if(c.work > budget){
+			System.out.println(String.format("%-36s %-34s %12s",c.name,c.params,"skipped"));
+			return;
+		}
+		for(int i = 0; i < warmup;i++){
+			c.setup();
+			sink = c.run();
+		}
+		double [] times = new double [iterations];
+		for(int i = 0; i < iterations;i++){
+			c.setup();
+			long start = System.nanoTime();
+			sink = c.run();
+			times[i] = (System.nanoTime() - start) / 1e6;
+		}
+		double mean = 0;
+		double min = Double.MAX_VALUE;
+		for(double t : times){
+			mean += t;
+			min = Math.min(min,t);
+		}
+		mean /= iterations;
+		double var = 0;
+		for(double t : times)
+			var += (t - mean) * (t - mean);
+		double error = iterations > 1 ? Math.sqrt(var / (iterations-1)) : 0;
+		System.out.println(String.format("%-36s %-34s %12.3f %10.3f %12.3f",c.name,c.params,mean,error,min));
+	}
+
+	/**Function createImage creates a test image with a smooth background, gaussian spots and noise.
+	 *
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param noise - gaussian, poisson or saturated
+	 * @param seed - Seed of the random generator
+	 * @return pixel array
+	 */
+	static float [] createImage(int width,int height,String noise,long seed){
+		Random rand = new Random(seed);
+		int nSpots = width*height / 4096;
+		double [] spots = new double [nSpots*4];
+		for(int i = 0; i < nSpots;i++){
+			spots[i*4] = rand.nextDouble() * width;
+			spots[i*4+1] = rand.nextDouble() * height;
+			spots[i*4+2] = 1.5 + rand.nextDouble() * 4;//Sigma
+			spots[i*4+3] = 50 + rand.nextDouble() * 300;//Amplitude
+		}
+		double [] signal = new double [width*height];
+		for(int row = 0; row < height;row++){
+			int offset = row*width;
+			for(int col = 0; col < width;col++){
+				signal[offset+col] = 500 + 200 * Math.sin(col * 3.0 / width) * Math.cos(row * 2.0 / height);
+			}
+		}
+		for(int i = 0; i < nSpots;i++){
+			double sigma = spots[i*4+2];
+			int radius = (int)(4 * sigma);
+			int cx = (int)spots[i*4];
+			int cy = (int)spots[i*4+1];
+			for(int row = Math.max(0,cy-radius); row < Math.min(height,cy+radius+1);row++){
+				for(int col = Math.max(0,cx-radius); col < Math.min(width,cx+radius+1);col++){
+					double dx = col - spots[i*4];
+					double dy = row - spots[i*4+1];
+					signal[row*width+col] += spots[i*4+3] * Math.exp(-(dx*dx+dy*dy) / (2*sigma*sigma));
+				}
+			}
+		}
+		float [] pix = new float [width*height];
+		for(int i = 0; i < pix.length;i++){
+			if(noise.equals("poisson"))//Gaussian approximation of the shot noise, rounded to camera counts.
+				pix[i] = (float)Math.max(0,Math.rint(signal[i] + Math.sqrt(signal[i]) * rand.nextGaussian()));
+			else if(noise.equals("saturated"))
+				pix[i] = (float)Math.max(0,Math.min(255,Math.rint((signal[i] - 600) * 0.8 + 10 * rand.nextGaussian())));
+			else
+				pix[i] = (float)(signal[i] + 20 * rand.nextGaussian());
+		}
+		return pix;
+	}
+
+	private static int [] parseInts(String value){
+		String [] items = value.split(",");
+		int [] ints = new int [items.length];
+		for(int i = 0; i < items.length;i++)
+			ints[i] = Integer.parseInt(items[i].trim());
+		return ints;
+	}
+}
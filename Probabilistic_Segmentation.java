@@ -6,6 +6,8 @@
 import java.awt.AWTEvent;
 import java.awt.TextField;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import ij.*;
 import ij.process.*;
@@ -66,17 +68,27 @@ import ij.gui.*;
 public class Probabilistic_Segmentation implements ExtendedPlugInFilter,DialogListener{
 	private ImagePlus imp;
 
-	private ImageStack segSt;//Segmentation stack.
+	//Slices are processed concurrently (PARALLELIZE_STACKS), so the results are stored by slice number
+	//and the stacks are built in slice order once every slice is done.
+	//The segmentation slices are kept bit-packed until then.
+	private AtomicReferenceArray<BitMask> segSlices;//Segmentation slices.
 	private ImagePlus segImg;//Segmentation window.
 
-	//Debug stacks
-	private ImageStack backgroundSt;
-	private ImageStack meanSt;
-	private ImageStack diffSt;
+	//Debug slices
+	private AtomicReferenceArray<ImageProcessor> backgroundSlices;
+	private AtomicReferenceArray<ImageProcessor> meanSlices;
+	private AtomicReferenceArray<ImageProcessor> diffSlices;
 
 
-	private int nPasses = 1;
-	private int pass;
+	//Parameters of the segmentation, created from the dialog values. null if the values are invalid.
+	private volatile SegmentationParams params;
+	private String paramsError;
+
+	//Noise model of the slices, null if the noise of every slice is estimated alone.
+	private volatile NoiseTracker noiseTracker;
+
+	private volatile int nPasses = 1;
+	private final AtomicInteger nDone = new AtomicInteger();
 
 	//private ImageStack stack;
 
@@ -93,121 +105,178 @@ public class Probabilistic_Segmentation implements ExtendedPlugInFilter,DialogLi
 	private static boolean doBackgroundSub = true;
 	private static boolean doPoissonEstimation = false;
 	private static boolean debug = true;
+	private static boolean trackNoise = false;
 	private static int paddingType = 0;
+	//PARALLEL PARAM
+	private static int nThreads = Parallel.getParallelism();
+	//BACKGROUND PYRAMID PARAM : reduction factor of the background image, 1 = exact median.
+	private static int bgPyramidFactor = 1;
+	//NOISE PARAM : target relative error (%) of the sampled noise estimate, 0 = all pixels.
+	private static double noiseSampleError = 0;
+	//TILE PARAM : side of the tiles of the stages (see TiledSegmenter), 0 = whole slice, -1 = from the cache size.
+	private static int tileSize = TiledSegmenter.TILE_NONE;
 
-	//ERROR MESSAGE
-	private static final String evenKernelError = "Kernel must be of odd size";
 	final double VERSION = 1.04;
 
-	private int flags = DOES_ALL|CONVERT_TO_FLOAT;
+	private int flags = DOES_ALL|CONVERT_TO_FLOAT|PARALLELIZE_STACKS;
 
+	/**Called by ImageJ for every slice, possibly from several threads at the same time.
+	 * The slice is segmented with processSlice and the results are stored at the slice number.
+	 * The last slice to finish shows the results.
+	 */
 	public void run(ImageProcessor ip){
-
-		//Validate background/image filter.
-		if(!validateBgKernel())
-			return ;
-		if(!validateImgKernel())
-			return;
-
-		int bgValue = 0;
-		int height = imp.getHeight();
-		int width = imp.getWidth();
-
-		/**Threshold parameters
-		 * 
-		 */
-		double pSinglePixel = 1 - MathFunction.normCDF(nseMult,0,1);
-		int avgMaskSize = imgKernelWidth * imgKernelHeight; //* imgKernelDepth;
-		double [] expectedFT = new double [avgMaskSize];
-		for (int i = 0; i < avgMaskSize;i++){
-			expectedFT[i] = ( 1-MathFunction.binoCDF(i, avgMaskSize, pSinglePixel) ) * height * width;
-		}
-		int idx = 0;
-		for(int i = 0; i < avgMaskSize;i++){
-			if (expectedFT[i] <= fpExp){
-					idx = i;
-				break;
+		int slice = ip.getSliceNumber();
+		if(slice < 1 || slice > segSlices.length())
+			slice = imp.getCurrentSlice();
+		SegmentationParams params = this.params;
+		Segmenter.Result result = segmentSlice(ip,params,noiseTracker);
+		segSlices.set(slice-1,result.mask);
+		if(params.isDebug()){
+			ImageProcessor [] results = debugImages(result,ip.getWidth(),ip.getHeight());
+			backgroundSlices.set(slice-1,results[1]);
+			diffSlices.set(slice-1,results[2]);
+			meanSlices.set(slice-1,results[3]);
+			IJ.log("Slice " + slice + " : foreground fraction " + IJ.d2s(result.mask.fraction(),4));
+			if(result.backgroundDeviation != null){
+				IJ.log("Slice " + slice + " : background deviation from the exact median, rms " + IJ.d2s(result.backgroundDeviation[0],4)
+						+ " max " + IJ.d2s(result.backgroundDeviation[1],4));
 			}
-		}
-
-		double fpThresh = (double)idx / avgMaskSize;
-		/**ESTIMATE BACKGROUND
-		 * 
-		 */
-		if (doBackgroundSub){
- 
-			ImageProcessor backgroundProcessor = Filter.medianFilter(ip,bgKernelWidth,bgKernelHeight,paddingType);
-			
-			if (debug){
-				backgroundSt.addSlice(ip);
-			}
-			if (doPoissonEstimation){
-				
-			}else{
-				//Subtract the image with the background
-				subtract(ip,backgroundProcessor);
-				imp.updateAndDraw();
+			NoiseEstimator.Estimate estimate = result.noiseEstimate;
+			if(estimate.isSampled()){
+				IJ.log("Slice " + slice + " : noise " + IJ.d2s(result.noise,4) + " +/- " + IJ.d2s(estimate.confidence(1.96)/20,4)
+						+ " (95%, " + estimate.sampleSize + " of " + estimate.populationSize + " differences), all differences "
+						+ IJ.d2s(result.fullNoise,4) + ", mask pixels changed " + result.fullNoiseDifferences);
 			}
 		}
-		else{
-			ImageProcessor dummy = new FloatProcessor(ip.getWidth(),ip.getHeight());
-			dummy.copyBits(ip, 0, 0, Blitter.COPY);
-			float [] dummyPix = new float [dummy.getWidth() * dummy.getHeight()];
-			dummyPix = (float [] ) dummy.getPixels();
-			float med;
-			med = QuickSelect.select(dummyPix,0,dummyPix.length-1,dummyPix.length/2+1);
-			bgValue = (int)med;
+		if(nDone.incrementAndGet() == nPasses)
+			showResults();
+	}
+
+	/**Function processSlice segments one slice with Segmenter. The function doesn't use the state of the plugin
+	 * so it can be called concurrently for different slices.
+	 * NOTE : The slice is changed, the background is subtracted.
+	 * @param ip - Float image processor of the slice, or 8/16 bits image processor (segmented with integers, see Segmenter)
+	 * @param params - Segmentation parameters
+	 * @return {segmentation, background, diff, mean} - The debug images are null if debug is false.
+	 */
+	public static ImageProcessor [] processSlice(ImageProcessor ip,SegmentationParams params){
+		return debugImages(segmentSlice(ip,params,null),ip.getWidth(),ip.getHeight());
+	}
+
+	/**Function segmentSlice segments one slice with Segmenter and replaces its pixels by the foreground.
+	 * The noise is given by tracker if it isn't null.
+	 */
+	private static Segmenter.Result segmentSlice(ImageProcessor ip,SegmentationParams params,NoiseTracker tracker){
+		Object pixels = ip.getPixels();
+		Segmenter.Result result;
+		if(pixels instanceof short [])
+			result = Segmenter.segmentDetailed((short [])pixels,ip.getWidth(),ip.getHeight(),params,tracker);
+		else if(pixels instanceof byte [])
+			result = Segmenter.segmentDetailed((byte [])pixels,ip.getWidth(),ip.getHeight(),params,tracker);
+		else
+			result = Segmenter.segmentDetailed((float [])pixels,ip.getWidth(),ip.getHeight(),params,tracker);
+		if(pixels instanceof float [])
+			ip.setPixels(result.foreground);
+		else
+			setForeground(pixels,result);
+		return result;
+	}
+
+	/**Function setForeground replaces the pixels of an 8/16 bits slice by the foreground, rounded and limited to the range
+	 * of the image as ImageJ does when it converts a float slice back.
+	 * 
+	 */
+	private static void setForeground(Object pixels,Segmenter.Result result){
+		if(pixels instanceof short []){
+			short [] pix = (short [])pixels;
+			for(int i = 0; i < pix.length;i++)
+				pix[i] = (short)foregroundValue(result,i,65535);
+		}else{
+			byte [] pix = (byte [])pixels;
+			for(int i = 0; i < pix.length;i++)
+				pix[i] = (byte)foregroundValue(result,i,255);
 		}
+	}
 
-		/**ESTIMATE NOISE
-		 * 
-		 */
-		ImageProcessor diffIp = diffRow(ip,3);
-		diffIp = diffCol(diffIp,3);
+	private static int foregroundValue(Segmenter.Result result,int i,int max){
+		int value = result.integerForeground != null ? result.integerForeground[i] : (int)(result.foreground[i] + 0.5f);
+		return Math.max(0,Math.min(value,max));
+	}
 
-		if (debug){
-			if(pass == 0){
-				this.diffSt = new ImageStack(diffIp.getWidth(),diffIp.getHeight());
-			}
-			ImageProcessor dummy = new FloatProcessor(diffIp.getWidth(),diffIp.getHeight());
-			dummy.copyBits(diffIp, 0, 0, Blitter.COPY);
-			diffSt.addSlice(dummy);
+	/**Function debugImages returns the image processors of a segmentation result.
+	 * 
+	 * @return {segmentation, background, diff, mean} - The debug images are null if they weren't calculated.
+	 */
+	private static ImageProcessor [] debugImages(Segmenter.Result result,int width,int height){
+		ImageProcessor segIP = toBinaryProcessor(result.mask);
+		ImageProcessor backgroundDebug = null;
+		ImageProcessor diffDebug = null;
+		ImageProcessor meanDebug = null;
+		if(result.diff != null){
+			if(result.background != null)
+				backgroundDebug = new FloatProcessor(width,height,result.background);
+			diffDebug = new FloatProcessor(width-3,height-3,result.diff);
+			meanDebug = new FloatProcessor(width,height,result.mean);
 		}
-		float stdDiffImage = getStd(diffIp);
-		//IJ.showMessage("Standard Deviation : "+ Float.toString(stdDiffImage));
+		return new ImageProcessor [] {segIP,backgroundDebug,diffDebug,meanDebug};
+	}
 
-		float noise = stdDiffImage/20;
-		//IJ.showMessage("NOISE : " + Float.toString(noise));
+	/**Function toBinaryProcessor returns the binary image (0|255) of a mask.
+	 * 
+	 */
+	private static ImageProcessor toBinaryProcessor(BitMask mask){
+		return new BinaryProcessor(new ByteProcessor(mask.getWidth(),mask.getHeight(),mask.toBytes()));
+	}
 
-		//IJ.showMessage("Fp Threshold : " + Double.toString(fpThresh));
-		/**THRESHOLD
-		 * 
-		 */
-		ImageProcessor segIP = threshold(ip,bgValue + noise * nseMult);
-		
-		segIP = Filter.meanFastFilter(segIP,imgKernelWidth,imgKernelHeight);
-		if (debug){
-			meanSt.addSlice(segIP);
+	/**Function showResults builds the result stacks in slice order and shows them.
+	 * 
+	 */
+	private void showResults(){
+		ImageStack segSt = null;
+		for(int i = 0; i < segSlices.length();i++){
+			BitMask mask = segSlices.get(i);
+			if(mask == null)
+				continue;
+			if(segSt == null)
+				segSt = new ImageStack(mask.getWidth(),mask.getHeight());
+			segSt.addSlice(toBinaryProcessor(mask));
 		}
-		segIP = binaryThreshold(segIP,fpThresh);
-		segSt.addSlice(segIP);
-		if (pass == nPasses-1){
-			segImg.setStack("Segmentation Image",segSt);
-			if(debug){
-				if(doBackgroundSub){
-					ImagePlus backgroundImage = new ImagePlus("Median image",backgroundSt);
-					backgroundImage.show();
-				}
-				ImagePlus diffImage = new ImagePlus("Diff Image",diffSt);
-				diffImage.show();
-
-
-				ImagePlus meanImg = new ImagePlus("mean Image",meanSt);
-				meanImg.show();
+		if(segSt == null)
+			return;
+		segImg.setStack("Segmentation Image",segSt);
+		if(params.isDebug()){
+			if(noiseTracker != null)
+				IJ.log("Noise tracking : " + noiseTracker.getFrames() + " slices, " + noiseTracker.getDrifts() + " drifts");
+			if(params.isBackgroundSubtraction()){
+				ImagePlus backgroundImage = new ImagePlus("Median image",toStack(backgroundSlices));
+				backgroundImage.show();
 			}
-			segImg.show();
+			ImagePlus diffImage = new ImagePlus("Diff Image",toStack(diffSlices));
+			diffImage.show();
+
+
+			ImagePlus meanImg = new ImagePlus("mean Image",toStack(meanSlices));
+			meanImg.show();
+		}
+		segImg.show();
+	}
+
+	/**Function toStack creates a stack with the processed slices, in slice order.
+	 * 
+	 * @param slices - Slices stored by slice number, null if the slice wasn't processed.
+	 * @return stack - null if no slice was processed
+	 */
+	private static ImageStack toStack(AtomicReferenceArray<ImageProcessor> slices){
+		ImageStack stack = null;
+		for(int i = 0; i < slices.length();i++){
+			ImageProcessor slice = slices.get(i);
+			if(slice == null)
+				continue;
+			if(stack == null)
+				stack = new ImageStack(slice.getWidth(),slice.getHeight());
+			stack.addSlice(slice);
 		}
-		pass++;
+		return stack;
 	}
 	/**This method is called by ImageJ for initialization
 	 * 
@@ -230,10 +299,13 @@ public class Probabilistic_Segmentation implements ExtendedPlugInFilter,DialogLi
 			IJ.noImage();
 			return DONE;
 		}
-		segSt = new ImageStack(imp.getWidth(),imp.getHeight());
+		int nSlices = imp.getStackSize();
+		segSlices = new AtomicReferenceArray<BitMask>(nSlices);
 		segImg = new ImagePlus();
-		backgroundSt = new ImageStack(imp.getWidth(),imp.getHeight());
-		meanSt = new ImageStack(imp.getWidth(),imp.getHeight());
+		backgroundSlices = new AtomicReferenceArray<ImageProcessor>(nSlices);
+		meanSlices = new AtomicReferenceArray<ImageProcessor>(nSlices);
+		diffSlices = new AtomicReferenceArray<ImageProcessor>(nSlices);
+		params = createParams();
 		return flags;	
 	}
 
@@ -248,7 +320,7 @@ public class Probabilistic_Segmentation implements ExtendedPlugInFilter,DialogLi
 		String [] checkBoxLabel = {"Background Estimation","Poisson Estimation"};
 		boolean [] defaultBoxValue = {doBackgroundSub,doPoissonEstimation};
 		gd.addCheckboxGroup(1,2,checkBoxLabel,defaultBoxValue);
-		String [] itemList = {"Antisymmetric","Symmetric"};
+		String [] itemList = {"Antisymmetric","Symmetric","Replicate","Zero"};
 		gd.addChoice("Padding Option", itemList, "Antisymmetric");
 		gd.addMessage("Background Filter mask");
 		gd.addNumericField("x",bgKernelWidth,0);
@@ -259,11 +331,32 @@ public class Probabilistic_Segmentation implements ExtendedPlugInFilter,DialogLi
 		gd.addNumericField("y",imgKernelHeight,0);
 		//param.addNumericField("z",1,3);
 		gd.addCheckbox("Debug", debug);
+		gd.addCheckbox("Track noise across slices", trackNoise);
+		gd.addNumericField("Threads",nThreads,0);
+		gd.addNumericField("Noise sampling error (%, 0 = all pixels)",noiseSampleError,1);
+		gd.addNumericField("Background pyramid factor (1 = exact)",bgPyramidFactor,0);
+		gd.addNumericField("Tile size (0 = whole slice, -1 = cache)",tileSize,0);
 		gd.addDialogListener(this); 
 		gd.showDialog();
 		if(gd.wasCanceled())
 			return DONE;
+		if(params == null){
+			IJ.error(paramsError);
+			return DONE;
+		}
+		//8/16 bits images are segmented with integers (see Segmenter), without the conversion to float.
+		if((imp.getBitDepth() == 8 || imp.getBitDepth() == 16) && Segmenter.isInteger(params))
+			flags &= ~CONVERT_TO_FLOAT;
+		else
+			flags |= CONVERT_TO_FLOAT;
 		flags = IJ.setupDialog(imp, flags);     // ask whether to process all slices of stack (if a stack)
+		//The noise model depends on the order of the slices, so they are processed one after the other.
+		if(trackNoise && (flags & DOES_STACKS) != 0){
+			noiseTracker = new NoiseTracker();
+			flags &= ~PARALLELIZE_STACKS;
+		}
+		else
+			noiseTracker = null;
 		return flags;
 	}
 
@@ -297,226 +390,57 @@ public class Probabilistic_Segmentation implements ExtendedPlugInFilter,DialogLi
 		imgKernelHeight = (int) gd.getNextNumber();
 		doBackgroundSub = gd.getNextBoolean();
 		doPoissonEstimation = gd.getNextBoolean();
-		paddingType = gd.getNextChoiceIndex();//0 = antisymmetric, 1 = symmetric;
+		paddingType = gd.getNextChoiceIndex();//Padding.ANTISYMMETRIC, SYMMETRIC, REPLICATE or ZERO
 		debug = gd.getNextBoolean();
+		trackNoise = gd.getNextBoolean();
+		nThreads = Math.max(1,(int) gd.getNextNumber());
+		noiseSampleError = gd.getNextNumber();
+		bgPyramidFactor = (int) gd.getNextNumber();
+		tileSize = (int) gd.getNextNumber();
 		xBgKernel.setEnabled(doBackgroundSub);
 		yBgKernel.setEnabled(doBackgroundSub);
+		params = createParams();
 		
 		return !gd.invalidNumber();
 	}
 
-
-	/**Function subtract calculates the subtraction of two float image processor
-	 * NOTE : The initial image is changed
-	 * @param destination - First image
-	 * @param source - image use for the subtraction
-	 * 
-	 */
-	public static void subtract(ImageProcessor destination, ImageProcessor source){
-		int width = destination.getWidth();
-		int height = destination.getHeight();
-		float [] pix1 = (float [])destination.getPixels();
-		float [] pix2 = (float [] ) source.getPixels();
-		for(int row = 0;row < height;row++){
-			int offset = row*width;
-			for(int col = 0; col < width;col++){
-				pix1[col+offset] = pix1[col+offset] - pix2[col+offset];
-			}
-		}
-		destination.setPixels(pix1);
-	}
-
-
-	/**Function diffCol calculates the nth difference between columns
-	 * Recursion is used for each subsequent difference.
-	 * @param destination - Float image processor
-	 * @param n - nth difference
-	 * @return diffCol - Float image processor of the nth difference
-	 */
-	private static ImageProcessor diffCol(ImageProcessor destination, int n){
-		int destWidth = destination.getWidth();
-		ImageProcessor diffIP = new FloatProcessor(destWidth-1,destination.getHeight());
-		int width = diffIP.getWidth();
-		int height = diffIP.getHeight();
-		float [] diffPix = (float [] ) diffIP.getPixels();
-		float [] pix = (float [] ) destination.getPixels();
-
-		for(int row = 0; row < height;row++){
-			int offset = row*width;
-			int diffOffset = row * destWidth;
-			for(int col = 0; col < width;col++){
-				diffPix[col+offset] = pix[col+diffOffset+1] - pix[col+diffOffset];
-			}
-		}
-		if(n == 1)
-			return diffIP;
-		else
-			return diffCol(diffIP,n-1);
-	}
-
-	/**Function diffRow calculates the nth difference between rows.
-	 * Recursion is used for each subsequent difference. n-1,n-2...n-(n-1) 
-	 * @param destination - Float image processor
-	 * @param n - The nth difference
-	 * @return diffRow - Float image  processor of the nth difference
-	 */
-	private static ImageProcessor diffRow(ImageProcessor destination, int n){
-		int destWidth = destination.getWidth();
-		ImageProcessor diffIP = new FloatProcessor(destWidth,destination.getHeight()-1);
-		int width = diffIP.getWidth();
-		int height = diffIP.getHeight();
-		float [] diffPix = (float [] ) diffIP.getPixels();
-		float [] pix = (float [] ) destination.getPixels();
-
-		for(int row = 0; row < height;row++){
-			int offset = row*width;
-			for(int col = 0; col < width;col++){
-				diffPix[col+offset] = pix[col+offset+width] - pix[col+offset];
-			}
-		}
-		if(n == 1)
-			return diffIP;
-		else
-			return diffRow(diffIP,n-1);
-	}
-
-	/**Function that calculate the standard deviation of an image. 
-	 * 
-	 * @param ip - Image processor containing the pixels value for the image
-	 * @return the standard deviation
-	 */
-	private static float getStd(ImageProcessor ip){
-		//cut-off is roughly at 3 sigma, see Danuser, 1992 or Rousseeuw & Leroy, 1987
-		int k = 3;
-		double magicNumber = Math.pow(1.4826,2);//see same publications
-		float [] pix = (float []) ip.getPixels();
-		//Find median
-		float median = QuickSelect.select(pix,0,pix.length-1,pix.length/2+1);
-		//IJ.showMessage(Float.toString(median));
-		float [] res2 = new float [pix.length];
-		int width = ip.getWidth();
-		int height = ip.getHeight();
-
-		//calculate squared residual.
-		for(int row = 0; row < height;row++){
-			int offset = row*width;
-			for(int col = 0; col < width;col++){
-				res2[col+offset] = (float)Math.pow( (pix[col+offset]-median),2);
-			}
-		}
-
-		//Find the median of the residual
-		float resMedian = QuickSelect.select(res2,0,res2.length-1,res2.length/2+1);
-		//IJ.showMessage(Float.toString(resMedian));
-
-		//Calculate the Weight for each pixel and if the pixel is not an outlier, add it to the sum.
-		float sumRes = 0;
-		int nInlier = 0;
-		for(int row = 0; row < height; row++){
-			int offset = row*width;
-			for(int col = 0; col < width; col++){
-				if(res2[col+offset] / (magicNumber * resMedian) <= (Math.pow(k,2))){
-					sumRes += res2[col+offset];
-					nInlier ++;
-				}
-			}
-		}
-		//IJ.showMessage(Integer.toString(nInlier));
-		return (float)Math.sqrt(sumRes / (nInlier-4) );
-	}
-
-	/**Function that return a byte image where pix[i,j] is 1 if pix[i,j] > threshold and 0 otherwise
+	/**Function createParams creates the segmentation parameters from the dialog values.
 	 * 
-	 * @param ip - float image processor to threshold
-	 * @param thresh - threshold level
-	 * @return byte image processor with value 0|1
+	 * @return params - null if the values are invalid. The error message is kept in paramsError.
 	 */
-	private static ImageProcessor threshold(ImageProcessor ip,double thresh){
-		int height = ip.getHeight();
-		int width = ip.getWidth();
-		float [] pix = (float [] )ip.getPixels();
-		byte [] bytePix = new byte [height*width];
-
-		for(int row = 0 ; row < height; row++){
-			int offset = row * width;
-			for(int col = 0 ; col < width; col++){
-				if(pix[offset + col] > thresh)
-					bytePix[offset+col] = (byte) 1;
-				else
-					bytePix[offset+col] = 0;
-			}
-		}
-		ImageProcessor binaryIP = new ByteProcessor(width,height,bytePix);
-		return binaryIP;
-	}
-
-	/**Function that return a binary image where pix[i,j] is 255 if pix[i,j] > threshold and 0 otherwise
-	 * 
-	 * @param ip - float image processor to threshold
-	 * @param thresh - threshold level
-	 * @return binary image processor with value 0|255
-	 * See also threshold.
-	 */
-	private static ImageProcessor binaryThreshold(ImageProcessor ip, double thresh){
-		int height = ip.getHeight();
-		int width = ip.getWidth();
-		float [] pix = (float [] )ip.getPixels();
-		byte [] bytePix = new byte [height*width];
-		for(int row = 0 ; row < height; row++){
-			int offset = row * width;
-			for(int col = 0 ; col < width; col++){
-				if(pix[offset + col] > thresh)
-					bytePix[offset+col] = (byte) 255;
-				else
-					bytePix[offset+col] = 0;
-			}
+	private SegmentationParams createParams(){
+		try{
+			return new SegmentationParams(fpExp,nseMult,bgKernelWidth,bgKernelHeight,imgKernelWidth,imgKernelHeight)
+					.withBackgroundSubtraction(doBackgroundSub)
+					.withPoissonEstimation(doPoissonEstimation)
+					.withPaddingType(paddingType)
+					.withNoiseSampleError(noiseSampleError/100)
+					.withBgPyramidFactor(bgPyramidFactor)
+					.withDebug(debug)
+					.withTileSize(tileSize)
+					.withParallelism(nThreads);
+		}catch(MathIllegalArgumentException e){
+			paramsError = "Invalid parameters : " + e.getMessage();
+			return null;
 		}
-		ImageProcessor binaryIP = new BinaryProcessor(new ByteProcessor(width,height,bytePix));
-		return binaryIP;
 	}
 
-	/**Function that validate the background kernel input by the user
-	 * 
-	 * @return true if background kernel is > 3 and if odd
-	 */
-	private static boolean validateBgKernel(){
-		String bgTooSmall = "Background Filter must have a width/height > 3";
-
-		if(bgKernelWidth < 3){
-			IJ.error(bgTooSmall);
-			return false;
-		}
-		else if(bgKernelWidth % 2 == 0){
-			IJ.error(evenKernelError);
-			return false;
-		}
-		return true;
-	}
 
-	/**Function that validate the image kernel given by the user
-	 * 
-	 * @return true if the image kernel is > 3 and if odd
-	 * @return false if the image kernel is < 3 and is even
+	/**Function subtract calculates the subtraction of two float image processor
+	 * NOTE : The initial image is changed
+	 * @param destination - First image
+	 * @param source - image use for the subtraction
+	 * See also Segmenter.subtract
 	 */
-	private static boolean validateImgKernel(){
-		String imgTooSmall = "Image Filter must have a width/height > 3";
-
-		if(imgKernelWidth < 3){
-			IJ.error(imgTooSmall);
-			return false;
-		}
-		else if(imgKernelWidth % 2 == 0){
-			IJ.error(evenKernelError);
-			return false;
-		}
-		return true;
+	public static void subtract(ImageProcessor destination, ImageProcessor source){
+		Segmenter.subtract(destination,source);
 	}
 
 	/** This method is called by ImageJ to set the number of calls to run(ip)
 	 *  corresponding to 100% of the progress bar */
 	public void setNPasses(int nPasses) {
 		this.nPasses = nPasses;
-		this.pass = 0;
+		this.nDone.set(0);
 		// TODO Auto-generated method stub	
 	}
 }
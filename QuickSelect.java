@@ -1,223 +1,474 @@
-import java.util.Random;
-
 /**Implementation of a quickselect. Quickselect is a selection algorithm that uses the quicksort algorithm.
  * Like quicksort, quickselect choose one element as a pivot and partition the other elements in 2 classes, higher or lower,
  * based on the pivot. However, quickselect only recurses in one of the 2 classes, where quicksort would recurses in both groups.
+ * The partition is three-way (Dutch national flag) : the elements equal to the pivot are grouped in the middle and are never
+ * partitioned again, so images with large flat regions (saturated pixels, zeros after background subtraction) stay linear.
  * 
+ *The pivot is chosen deterministically with a median of 3 (ninther, median of 3 medians of 3, for large arrays),
+ *so the selection never allocates. If the partitions are unbalanced for too long (more than 2*log2(n) partitions
+ *keeping more than 3/4 of the elements), the selection falls back on the median of medians pivot (introselect),
+ *which guarantees a linear worst case.
+ *The median of small arrays (up to 7x7 kernels) is found with a sorting network (see SortingNetwork).
+ *
  *------ EFFICIENCY ------ 
- *worst case performance : O(n^2)
+ *worst case performance : O(n)
  *Best case performance : O(n)
  *Average case performance : O(n)
  * @author Jacques Boisvert
  *Note : Quickselect is also known as Hoare's selection algorithm
  *Note : The array passed by reference is actually sort by the function 
  *		 when the function is searching for the k-order element. 
+ *		 When the median is found with a sorting network, some elements are overwritten instead.
  */
 public class QuickSelect {
+
+	//Smallest array for which the ninther is used as pivot.
+	private final static int nintherSize = 40;
 	
-/**Function partition is responsible to divide the elements situated between the border left and right in 2 classes, 
- * lower or higher elements.
- * Note : Short array are cast into int first with a binary AND operation &0xffff
- * @param arr - short array
- * @param left - Left border
- * @param right - Right border
- * @param pivot - pivot index
- * @return storeIdx -  new pivot index
- */
-	private static int partition(short [] arr,int left,int right,int pivot){
-		short pivotValue = arr[pivot];
-		arr[pivot] = arr[right];//Put the pivot as the last element
-		arr[right] = pivotValue;
-		int storeIdx = left;
-		for(int i = left;i<=right-1;i++){
-			if( (arr[i] &0xffff) < (pivotValue &0xffff)){//short -> int
-				short tmp = arr[i];
-				arr[i] = arr[storeIdx];
-				arr[storeIdx] = tmp;
-				storeIdx++;
+	/** Select is an iterative function, that divides an array in subarray based on a pivot.
+	 * Pivot selection is done with a median of 3 (or ninther), and with the median of medians when the partitions are unbalanced.
+	 * The median of an array of at most SortingNetwork.MAX_SIZE elements is found with a sorting network.
+	 * Note : Value are assumed to be in the range 0-65535, so the comparisons are made on (value &0xffff)
+	 * @param arr - short array
+	 * @param left - Left boundary - Usually when starting the algorithm, this value is 0. 
+	 * @param right - Right boundary - Usually when starting the algorithm this value is arr.length-1.
+	 * @param k - k-order value to be found - If looking for the median, starting value is arr.length/2 + 1.
+	 * @return value of the k-order element.
+	 */
+	public static short select(short [] arr,int left, int right, int k ){
+		int n = right - left + 1;
+		if(n <= SortingNetwork.MAX_SIZE && k == n/2+1)
+			return SortingNetwork.median(arr,left,n);
+		return introSelect(arr,left,right,k);
+	}
+
+	/**Function introSelect is the iterative selection of select, without the sorting network.
+	 * Contrary to the network, it only moves the elements, so the k-order element is left at index left+k-1.
+	 * @param arr - short array
+	 * @param left - Left boundary
+	 * @param right - Right boundary
+	 * @param k - k-order value to be found
+	 * @return value of the k-order element.
+	 */
+	private static short introSelect(short [] arr,int left, int right, int k ){
+		int n = right - left + 1;
+		int goodIterations = 2 * (32 - Integer.numberOfLeadingZeros(n));//2*log2(n) unbalanced partitions before the median of medians.
+		while(!(left == right)){
+			int pivotIdx;
+			if(goodIterations > 0){
+				pivotIdx = pivot(arr,left,right);
+			}else{//Too many unbalanced partitions.
+				pivotIdx = medianOfMedians(arr,left,right);
+			}
+			//Three-way partition (Dutch national flag) : [left,lower[ < pivot, [lower,upper] == pivot, ]upper,right] > pivot
+			short pivotValue = arr[pivotIdx];
+			int pivotKey = (pivotValue &0xffff);
+			int lower = left;
+			int upper = right;
+			int i = left;
+			while(i <= upper){
+				int value = (arr[i] &0xffff);
+				if(value < pivotKey){
+					short tmp = arr[i];
+					arr[i] = arr[lower];
+					arr[lower] = tmp;
+					lower++;
+					i++;
+				}else if(value > pivotKey){
+					short tmp = arr[i];
+					arr[i] = arr[upper];
+					arr[upper] = tmp;
+					upper--;
+				}else
+					i++;
+			}
+			//Unbalanced partition : the part kept has more than 3/4 of the elements.
+			int kept = k <= lower - left ? lower - left : k <= upper - left + 1 ? 0 : right - upper;
+			if(4L * kept > 3L * (right - left + 1))
+				goodIterations--;
+			if (k <= lower - left) // k-order value is situated in the left part of the array
+				right = lower-1;
+			else if (k <= upper - left + 1) //Found k-order value, in the values equal to the pivot.
+				return pivotValue;
+			else{ // k-order value is situated in the right part of the array
+				k = k - (upper - left + 1);
+				left = upper+1;
 			}
 		}
-		arr[right] = arr[storeIdx];
-		arr[storeIdx] = pivotValue;
-
-		return storeIdx;
+		return arr[left];//Only 1 element left
 	}
-	
-	/**Function partition is responsible to divide the elements situated between the border left and right in 2 classes, 
-	 * lower or higher elements.
-	 * 
-	 * @param arr - int array
+
+	/**Function pivot returns the index of the median of 3 elements (first, middle, last).
+	 * For large arrays, the ninther is used : the median of the medians of 3 groups of 3 elements.
+	 * @param arr - short array
 	 * @param left - Left border
 	 * @param right - Right border
-	 * @param pivot - pivot index
-	 * @return storeIdx -  new pivot index
+	 * @return pivot index
 	 */
-	private static int partition(int [] arr,int left,int right,int pivot){
-		int pivotValue = arr[pivot];
-		arr[pivot] = arr[right]; //Put the pivot as the last element
-		arr[right] = pivotValue;
-		int storeIdx = left; 
-		for(int i = left;i<=right-1;i++){
-			if(arr[i] < pivotValue){
-				int tmp = arr[i];
-				arr[i] = arr[storeIdx];
-				arr[storeIdx] = tmp;
-				storeIdx++;
-			}
-		}
-		arr[right] = arr[storeIdx];
-		arr[storeIdx] = pivotValue;
-
+	private static int pivot(short [] arr,int left,int right){
+		int n = right - left + 1;
+		int middle = left + n/2;
+		if(n < nintherSize)
+			return median3(arr,left,middle,right);
+		int step = n/8;
+		int a = median3(arr,left,left+step,left+2*step);
+		int b = median3(arr,middle-step,middle,middle+step);
+		int c = median3(arr,right-2*step,right-step,right);
+		return median3(arr,a,b,c);
+	}
 
-		return storeIdx;
+	/**Return the index of the median of arr[a], arr[b] and arr[c].
+	 *
+	 */
+	private static int median3(short [] arr,int a,int b,int c){
+		int va = (arr[a] &0xffff);
+		int vb = (arr[b] &0xffff);
+		int vc = (arr[c] &0xffff);
+		if(va < vb){
+			if(vb < vc)
+				return b;
+			return va < vc ? c : a;
+		}
+		if(va < vc)
+			return a;
+		return vb < vc ? c : b;
 	}
-	
-	/**Function partition is responsible to divide the elements situated between the border left and right in 2 classes, 
-	 * lower or higher elements.
-	 * @param arr - float array
+
+	/**Function medianOfMedians returns the index of the median of medians (BFPRT) of arr[left..right].
+	 * The median of every group of 5 elements is moved at the beginning of the array, and the median of these
+	 * medians is selected. The pivot is then guaranteed to be between the 30th and the 70th percentile.
+	 * @param arr - short array
 	 * @param left - Left border
 	 * @param right - Right border
-	 * @param pivot - pivot index
-	 * @return storeIdx -  new pivot index
+	 * @return pivot index
 	 */
-	private static int partition(float [] arr,int left,int right,int pivot){
-		float pivotValue = arr[pivot];
-		arr[pivot] = arr[right]; //Put the pivot as the last element
-		arr[right] = pivotValue;
-		int storeIdx = left;
-		for(int i = left;i<=right-1;i++){
-			if(arr[i] < pivotValue){
-				float tmp = arr[i];
-				arr[i] = arr[storeIdx];
-				arr[storeIdx] = tmp;
-				storeIdx++;
-			}
+	private static int medianOfMedians(short [] arr,int left,int right){
+		int nGroups = 0;
+		for(int i = left; i <= right;i += 5){
+			int groupRight = Math.min(i+4,right);
+			insertionSort(arr,i,groupRight);
+			int median = (i + groupRight) / 2;
+			short tmp = arr[median];
+			arr[median] = arr[left+nGroups];
+			arr[left+nGroups] = tmp;
+			nGroups++;
 		}
-		arr[right] = arr[storeIdx];
-		arr[storeIdx] = pivotValue;
-
-
-		return storeIdx;
+		introSelect(arr,left,left+nGroups-1,nGroups/2+1);//Leaves the median of medians at left+nGroups/2.
+		return left + nGroups/2;
 	}
-	
-	/**Function partition is responsible to divide the elements situated between the border left and right in 2 classes, 
-	 * lower or higher elements.
-	 * Note : Byte array are cast into int first with a binary AND operation &0xff
-	 * @param arr - byte array
-	 * @param left - Left border
-	 * @param right - Right border
-	 * @param pivot - pivot index
-	 * @return storeIdx -  new pivot index
+
+	/**Function insertionSort sorts arr[left..right]. Used for the groups of 5 elements.
+	 *
 	 */
-	private static int partition(byte [] arr,int left,int right,int pivot){
-		byte pivotValue = arr[pivot];
-		arr[pivot] = arr[right]; //Put the pivot as the last element
-		arr[right] = pivotValue;
-		int storeIdx = left;
-		for(int i = left;i<=right-1;i++){
-			if( ( arr[i]&0xff) < (pivotValue &0xff)){//byte -> int
-				byte tmp = arr[i];
-				arr[i] = arr[storeIdx];
-				arr[storeIdx] = tmp;
-				storeIdx++;
+	private static void insertionSort(short [] arr,int left,int right){
+		for(int i = left+1; i <= right;i++){
+			short value = arr[i];
+			int j = i-1;
+			while(j >= left && (arr[j] &0xffff) > (value &0xffff)){
+				arr[j+1] = arr[j];
+				j--;
 			}
+			arr[j+1] = value;
 		}
-		arr[right] = arr[storeIdx];
-		arr[storeIdx] = pivotValue;
-
-
-		return storeIdx;
 	}
-	
+
 	/** Select is an iterative function, that divides an array in subarray based on a pivot.
-	 * Pivot selection is done randomly.  
-	 * Note : Value are assumed to be in the range 0-65535, so when the comparison
-	 * is going to be made in the partition function, the byte will be cast with a binary AND operation &0xffff
-	 * @param arr - short array
+	 * Pivot selection is done with a median of 3 (or ninther), and with the median of medians when the partitions are unbalanced.
+	 * The median of an array of at most SortingNetwork.MAX_SIZE elements is found with a sorting network.
+	 * Note : Value are assumed to be in the range 0-255, so the comparisons are made on (value &0xff)
+	 * @param arr - byte array
 	 * @param left - Left boundary - Usually when starting the algorithm, this value is 0. 
 	 * @param right - Right boundary - Usually when starting the algorithm this value is arr.length-1.
 	 * @param k - k-order value to be found - If looking for the median, starting value is arr.length/2 + 1.
 	 * @return value of the k-order element.
 	 */
-	public static short select(short [] arr,int left, int right, int k ){
-		while(!(left == right)){
-			Random rand = new Random();
-			int pivotIdx = rand.nextInt(right- left + 1) + left;//Select randomly pivot.
-			int pivotNewIdx = partition(arr,left,right,pivotIdx);//Pivot has move. Update his position.
-			int pivotDist = pivotNewIdx - left + 1;
-			if (pivotDist == k){ //Found k-order value.
-				return arr[pivotNewIdx];
-			}
-			else if (k < pivotDist) // k-order value is situation in left part of the array
-				right = pivotNewIdx-1;
-			else{ // k-order value is situated in the right part of the array
-				left = pivotNewIdx+1;
-				k = k-pivotDist;
-			}		
-		}
-		return arr[left];//Only 1 element left
+	public static byte select(byte [] arr,int left, int right, int k ){
+		int n = right - left + 1;
+		if(n <= SortingNetwork.MAX_SIZE && k == n/2+1)
+			return SortingNetwork.median(arr,left,n);
+		return introSelect(arr,left,right,k);
 	}
 
-	/** Select is an iterative function, that divides an array in subarray based on a pivot.
-	 * Pivot selection is done randomly. 
-	 * Note : Value are assumed to be in the range 0-255, so when the comparison
-	 * is going to be made in the partition function, the byte will be cast with a binary AND operation &0xff
+	/**Function introSelect is the iterative selection of select, without the sorting network.
+	 * Contrary to the network, it only moves the elements, so the k-order element is left at index left+k-1.
 	 * @param arr - byte array
-	 * @param left - Left boundary - Usually when starting the algorithm, this value is 0. 
-	 * @param right - Right boundary - Usually when starting the algorithm this value is arr.length-1.
-	 * @param k - k-order value to be found - If looking for the median, starting value is arr.length/2 + 1.
+	 * @param left - Left boundary
+	 * @param right - Right boundary
+	 * @param k - k-order value to be found
 	 * @return value of the k-order element.
-	 * 
 	 */
-	public static byte select(byte [] arr,int left, int right, int k ){
+	private static byte introSelect(byte [] arr,int left, int right, int k ){
+		int n = right - left + 1;
+		int goodIterations = 2 * (32 - Integer.numberOfLeadingZeros(n));//2*log2(n) unbalanced partitions before the median of medians.
 		while(!(left == right)){
-			Random rand = new Random();
-			int pivotIdx = rand.nextInt(right- left + 1) + left;
-			int pivotNewIdx = partition(arr,left,right,pivotIdx);//Pivot has move. Update his position.
-			int pivotDist = pivotNewIdx - left + 1;
-			if (pivotDist == k){ //Found k-order value.
-				return arr[pivotNewIdx];
-			}
-			else if (k < pivotDist)// k-order value is situation in left part of the array
-				right = pivotNewIdx-1;
+			int pivotIdx;
+			if(goodIterations > 0){
+				pivotIdx = pivot(arr,left,right);
+			}else{//Too many unbalanced partitions.
+				pivotIdx = medianOfMedians(arr,left,right);
+			}
+			//Three-way partition (Dutch national flag) : [left,lower[ < pivot, [lower,upper] == pivot, ]upper,right] > pivot
+			byte pivotValue = arr[pivotIdx];
+			int pivotKey = (pivotValue &0xff);
+			int lower = left;
+			int upper = right;
+			int i = left;
+			while(i <= upper){
+				int value = (arr[i] &0xff);
+				if(value < pivotKey){
+					byte tmp = arr[i];
+					arr[i] = arr[lower];
+					arr[lower] = tmp;
+					lower++;
+					i++;
+				}else if(value > pivotKey){
+					byte tmp = arr[i];
+					arr[i] = arr[upper];
+					arr[upper] = tmp;
+					upper--;
+				}else
+					i++;
+			}
+			//Unbalanced partition : the part kept has more than 3/4 of the elements.
+			int kept = k <= lower - left ? lower - left : k <= upper - left + 1 ? 0 : right - upper;
+			if(4L * kept > 3L * (right - left + 1))
+				goodIterations--;
+			if (k <= lower - left) // k-order value is situated in the left part of the array
+				right = lower-1;
+			else if (k <= upper - left + 1) //Found k-order value, in the values equal to the pivot.
+				return pivotValue;
 			else{ // k-order value is situated in the right part of the array
-				left = pivotNewIdx+1;
-				k = k-pivotDist;
-			}		
+				k = k - (upper - left + 1);
+				left = upper+1;
+			}
 		}
 		return arr[left];//Only 1 element left
 	}
-	
+
+	/**Function pivot returns the index of the median of 3 elements (first, middle, last).
+	 * For large arrays, the ninther is used : the median of the medians of 3 groups of 3 elements.
+	 * @param arr - byte array
+	 * @param left - Left border
+	 * @param right - Right border
+	 * @return pivot index
+	 */
+	private static int pivot(byte [] arr,int left,int right){
+		int n = right - left + 1;
+		int middle = left + n/2;
+		if(n < nintherSize)
+			return median3(arr,left,middle,right);
+		int step = n/8;
+		int a = median3(arr,left,left+step,left+2*step);
+		int b = median3(arr,middle-step,middle,middle+step);
+		int c = median3(arr,right-2*step,right-step,right);
+		return median3(arr,a,b,c);
+	}
+
+	/**Return the index of the median of arr[a], arr[b] and arr[c].
+	 *
+	 */
+	private static int median3(byte [] arr,int a,int b,int c){
+		int va = (arr[a] &0xff);
+		int vb = (arr[b] &0xff);
+		int vc = (arr[c] &0xff);
+		if(va < vb){
+			if(vb < vc)
+				return b;
+			return va < vc ? c : a;
+		}
+		if(va < vc)
+			return a;
+		return vb < vc ? c : b;
+	}
+
+	/**Function medianOfMedians returns the index of the median of medians (BFPRT) of arr[left..right].
+	 * The median of every group of 5 elements is moved at the beginning of the array, and the median of these
+	 * medians is selected. The pivot is then guaranteed to be between the 30th and the 70th percentile.
+	 * @param arr - byte array
+	 * @param left - Left border
+	 * @param right - Right border
+	 * @return pivot index
+	 */
+	private static int medianOfMedians(byte [] arr,int left,int right){
+		int nGroups = 0;
+		for(int i = left; i <= right;i += 5){
+			int groupRight = Math.min(i+4,right);
+			insertionSort(arr,i,groupRight);
+			int median = (i + groupRight) / 2;
+			byte tmp = arr[median];
+			arr[median] = arr[left+nGroups];
+			arr[left+nGroups] = tmp;
+			nGroups++;
+		}
+		introSelect(arr,left,left+nGroups-1,nGroups/2+1);//Leaves the median of medians at left+nGroups/2.
+		return left + nGroups/2;
+	}
+
+	/**Function insertionSort sorts arr[left..right]. Used for the groups of 5 elements.
+	 *
+	 */
+	private static void insertionSort(byte [] arr,int left,int right){
+		for(int i = left+1; i <= right;i++){
+			byte value = arr[i];
+			int j = i-1;
+			while(j >= left && (arr[j] &0xff) > (value &0xff)){
+				arr[j+1] = arr[j];
+				j--;
+			}
+			arr[j+1] = value;
+		}
+	}
+
 	/** Select is an iterative function, that divides an array in subarray based on a pivot.
-	 * Pivot selection is done randomly. 
+	 * Pivot selection is done with a median of 3 (or ninther), and with the median of medians when the partitions are unbalanced.
+	 * The median of an array of at most SortingNetwork.MAX_SIZE elements is found with a sorting network.
 	 * 
 	 * @param arr - float array
 	 * @param left - Left boundary - Usually when starting the algorithm, this value is 0. 
 	 * @param right - Right boundary - Usually when starting the algorithm this value is arr.length-1.
 	 * @param k - k-order value to be found - If looking for the median, starting value is arr.length/2 + 1.
 	 * @return value of the k-order element.
-	 */	
+	 */
 	public static float select(float [] arr,int left, int right, int k ){
+		int n = right - left + 1;
+		if(n <= SortingNetwork.MAX_SIZE && k == n/2+1)
+			return SortingNetwork.median(arr,left,n);
+		return introSelect(arr,left,right,k);
+	}
+
+	/**Function introSelect is the iterative selection of select, without the sorting network.
+	 * Contrary to the network, it only moves the elements, so the k-order element is left at index left+k-1.
+	 * @param arr - float array
+	 * @param left - Left boundary
+	 * @param right - Right boundary
+	 * @param k - k-order value to be found
+	 * @return value of the k-order element.
+	 */
+	private static float introSelect(float [] arr,int left, int right, int k ){
+		int n = right - left + 1;
+		int goodIterations = 2 * (32 - Integer.numberOfLeadingZeros(n));//2*log2(n) unbalanced partitions before the median of medians.
 		while(!(left == right)){
-			Random rand = new Random();
-			int pivotIdx = rand.nextInt(right- left + 1) + left;
-			int pivotNewIdx = partition(arr,left,right,pivotIdx);//Pivot has move. Update his position.
-			int pivotDist = pivotNewIdx - left + 1;
-			if (pivotDist == k){ //Found k-order value.
-				return arr[pivotNewIdx];
-			}
-			else if (k < pivotDist)
-				right = pivotNewIdx-1;
+			int pivotIdx;
+			if(goodIterations > 0){
+				pivotIdx = pivot(arr,left,right);
+			}else{//Too many unbalanced partitions.
+				pivotIdx = medianOfMedians(arr,left,right);
+			}
+			//Three-way partition (Dutch national flag) : [left,lower[ < pivot, [lower,upper] == pivot, ]upper,right] > pivot
+			float pivotValue = arr[pivotIdx];
+			float pivotKey = pivotValue;
+			int lower = left;
+			int upper = right;
+			int i = left;
+			while(i <= upper){
+				float value = arr[i];
+				if(value < pivotKey){
+					float tmp = arr[i];
+					arr[i] = arr[lower];
+					arr[lower] = tmp;
+					lower++;
+					i++;
+				}else if(value > pivotKey){
+					float tmp = arr[i];
+					arr[i] = arr[upper];
+					arr[upper] = tmp;
+					upper--;
+				}else
+					i++;
+			}
+			//Unbalanced partition : the part kept has more than 3/4 of the elements.
+			int kept = k <= lower - left ? lower - left : k <= upper - left + 1 ? 0 : right - upper;
+			if(4L * kept > 3L * (right - left + 1))
+				goodIterations--;
+			if (k <= lower - left) // k-order value is situated in the left part of the array
+				right = lower-1;
+			else if (k <= upper - left + 1) //Found k-order value, in the values equal to the pivot.
+				return pivotValue;
 			else{ // k-order value is situated in the right part of the array
-				left = pivotNewIdx+1;
-				k = k-pivotDist;
-			}		
+				k = k - (upper - left + 1);
+				left = upper+1;
+			}
 		}
 		return arr[left];//Only 1 element left
 	}
-	
+
+	/**Function pivot returns the index of the median of 3 elements (first, middle, last).
+	 * For large arrays, the ninther is used : the median of the medians of 3 groups of 3 elements.
+	 * @param arr - float array
+	 * @param left - Left border
+	 * @param right - Right border
+	 * @return pivot index
+	 */
+	private static int pivot(float [] arr,int left,int right){
+		int n = right - left + 1;
+		int middle = left + n/2;
+		if(n < nintherSize)
+			return median3(arr,left,middle,right);
+		int step = n/8;
+		int a = median3(arr,left,left+step,left+2*step);
+		int b = median3(arr,middle-step,middle,middle+step);
+		int c = median3(arr,right-2*step,right-step,right);
+		return median3(arr,a,b,c);
+	}
+
+	/**Return the index of the median of arr[a], arr[b] and arr[c].
+	 *
+	 */
+	private static int median3(float [] arr,int a,int b,int c){
+		float va = arr[a];
+		float vb = arr[b];
+		float vc = arr[c];
+		if(va < vb){
+			if(vb < vc)
+				return b;
+			return va < vc ? c : a;
+		}
+		if(va < vc)
+			return a;
+		return vb < vc ? c : b;
+	}
+
+	/**Function medianOfMedians returns the index of the median of medians (BFPRT) of arr[left..right].
+	 * The median of every group of 5 elements is moved at the beginning of the array, and the median of these
+	 * medians is selected. The pivot is then guaranteed to be between the 30th and the 70th percentile.
+	 * @param arr - float array
+	 * @param left - Left border
+	 * @param right - Right border
+	 * @return pivot index
+	 */
+	private static int medianOfMedians(float [] arr,int left,int right){
+		int nGroups = 0;
+		for(int i = left; i <= right;i += 5){
+			int groupRight = Math.min(i+4,right);
+			insertionSort(arr,i,groupRight);
+			int median = (i + groupRight) / 2;
+			float tmp = arr[median];
+			arr[median] = arr[left+nGroups];
+			arr[left+nGroups] = tmp;
+			nGroups++;
+		}
+		introSelect(arr,left,left+nGroups-1,nGroups/2+1);//Leaves the median of medians at left+nGroups/2.
+		return left + nGroups/2;
+	}
+
+	/**Function insertionSort sorts arr[left..right]. Used for the groups of 5 elements.
+	 *
+	 */
+	private static void insertionSort(float [] arr,int left,int right){
+		for(int i = left+1; i <= right;i++){
+			float value = arr[i];
+			int j = i-1;
+			while(j >= left && arr[j] > value){
+				arr[j+1] = arr[j];
+				j--;
+			}
+			arr[j+1] = value;
+		}
+	}
+
 	/** Select is an iterative function, that divides an array in subarray based on a pivot.
-	 * Pivot selection is done randomly. 
+	 * Pivot selection is done with a median of 3 (or ninther), and with the median of medians when the partitions are unbalanced.
+	 * The median of an array of at most SortingNetwork.MAX_SIZE elements is found with a sorting network.
 	 * 
 	 * @param arr - int array
 	 * @param left - Left boundary - Usually when starting the algorithm, this value is 0. 
@@ -226,22 +477,139 @@ public class QuickSelect {
 	 * @return value of the k-order element.
 	 */
 	public static int select(int [] arr,int left, int right, int k ){
+		int n = right - left + 1;
+		if(n <= SortingNetwork.MAX_SIZE && k == n/2+1)
+			return SortingNetwork.median(arr,left,n);
+		return introSelect(arr,left,right,k);
+	}
+
+	/**Function introSelect is the iterative selection of select, without the sorting network.
+	 * Contrary to the network, it only moves the elements, so the k-order element is left at index left+k-1.
+	 * @param arr - int array
+	 * @param left - Left boundary
+	 * @param right - Right boundary
+	 * @param k - k-order value to be found
+	 * @return value of the k-order element.
+	 */
+	private static int introSelect(int [] arr,int left, int right, int k ){
+		int n = right - left + 1;
+		int goodIterations = 2 * (32 - Integer.numberOfLeadingZeros(n));//2*log2(n) unbalanced partitions before the median of medians.
 		while(!(left == right)){
-			Random rand = new Random();
-			int pivotIdx = rand.nextInt(right- left + 1) + left;//Select randomly pivot.
-			int pivotNewIdx = partition(arr,left,right,pivotIdx);//Pivot has move. Update his position.
-			int pivotDist = pivotNewIdx - left + 1;//Calculate the distance
-			if (pivotDist == k){//Found k-order value.
-				return arr[pivotNewIdx];
-			}
-			else if (k < pivotDist)// k-order value is situation in left part of the array
-				right = pivotNewIdx-1;
+			int pivotIdx;
+			if(goodIterations > 0){
+				pivotIdx = pivot(arr,left,right);
+			}else{//Too many unbalanced partitions.
+				pivotIdx = medianOfMedians(arr,left,right);
+			}
+			//Three-way partition (Dutch national flag) : [left,lower[ < pivot, [lower,upper] == pivot, ]upper,right] > pivot
+			int pivotValue = arr[pivotIdx];
+			int pivotKey = pivotValue;
+			int lower = left;
+			int upper = right;
+			int i = left;
+			while(i <= upper){
+				int value = arr[i];
+				if(value < pivotKey){
+					int tmp = arr[i];
+					arr[i] = arr[lower];
+					arr[lower] = tmp;
+					lower++;
+					i++;
+				}else if(value > pivotKey){
+					int tmp = arr[i];
+					arr[i] = arr[upper];
+					arr[upper] = tmp;
+					upper--;
+				}else
+					i++;
+			}
+			//Unbalanced partition : the part kept has more than 3/4 of the elements.
+			int kept = k <= lower - left ? lower - left : k <= upper - left + 1 ? 0 : right - upper;
+			if(4L * kept > 3L * (right - left + 1))
+				goodIterations--;
+			if (k <= lower - left) // k-order value is situated in the left part of the array
+				right = lower-1;
+			else if (k <= upper - left + 1) //Found k-order value, in the values equal to the pivot.
+				return pivotValue;
 			else{ // k-order value is situated in the right part of the array
-				left = pivotNewIdx+1;
-				k = k-pivotDist;
-			}		
+				k = k - (upper - left + 1);
+				left = upper+1;
+			}
 		}
 		return arr[left];//Only 1 element left
 	}
+
+	/**Function pivot returns the index of the median of 3 elements (first, middle, last).
+	 * For large arrays, the ninther is used : the median of the medians of 3 groups of 3 elements.
+	 * @param arr - int array
+	 * @param left - Left border
+	 * @param right - Right border
+	 * @return pivot index
+	 */
+	private static int pivot(int [] arr,int left,int right){
+		int n = right - left + 1;
+		int middle = left + n/2;
+		if(n < nintherSize)
+			return median3(arr,left,middle,right);
+		int step = n/8;
+		int a = median3(arr,left,left+step,left+2*step);
+		int b = median3(arr,middle-step,middle,middle+step);
+		int c = median3(arr,right-2*step,right-step,right);
+		return median3(arr,a,b,c);
+	}
+
+	/**Return the index of the median of arr[a], arr[b] and arr[c].
+	 *
+	 */
+	private static int median3(int [] arr,int a,int b,int c){
+		int va = arr[a];
+		int vb = arr[b];
+		int vc = arr[c];
+		if(va < vb){
+			if(vb < vc)
+				return b;
+			return va < vc ? c : a;
+		}
+		if(va < vc)
+			return a;
+		return vb < vc ? c : b;
+	}
+
+	/**Function medianOfMedians returns the index of the median of medians (BFPRT) of arr[left..right].
+	 * The median of every group of 5 elements is moved at the beginning of the array, and the median of these
+	 * medians is selected. The pivot is then guaranteed to be between the 30th and the 70th percentile.
+	 * @param arr - int array
+	 * @param left - Left border
+	 * @param right - Right border
+	 * @return pivot index
+	 */
+	private static int medianOfMedians(int [] arr,int left,int right){
+		int nGroups = 0;
+		for(int i = left; i <= right;i += 5){
+			int groupRight = Math.min(i+4,right);
+			insertionSort(arr,i,groupRight);
+			int median = (i + groupRight) / 2;
+			int tmp = arr[median];
+			arr[median] = arr[left+nGroups];
+			arr[left+nGroups] = tmp;
+			nGroups++;
+		}
+		introSelect(arr,left,left+nGroups-1,nGroups/2+1);//Leaves the median of medians at left+nGroups/2.
+		return left + nGroups/2;
+	}
+
+	/**Function insertionSort sorts arr[left..right]. Used for the groups of 5 elements.
+	 *
+	 */
+	private static void insertionSort(int [] arr,int left,int right){
+		for(int i = left+1; i <= right;i++){
+			int value = arr[i];
+			int j = i-1;
+			while(j >= left && arr[j] > value){
+				arr[j+1] = arr[j];
+				j--;
+			}
+			arr[j+1] = value;
+		}
+	}
 }
- 
\ No newline at end of file
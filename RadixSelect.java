@@ -0,0 +1,283 @@
+import java.util.Arrays;
+
+/**Exact selection of the k-order element of a large array with radix histograms.
+ * Every value is mapped to an unsigned key with the same order, and the key is found 16 bits at a time :
+ * a histogram of the 16 high bits gives the bin of the k-order element, and a histogram of the 16 low bits
+ * of the elements of that bin gives the element itself. 16 bits data only need the first histogram.
+ *
+ * Contrary to QuickSelect, the array is only read, never changed, so it doesn't have to be copied and
+ * can be shared by many threads. The histograms of the chunks of the array are calculated concurrently (see Parallel)
+ * and merged, which gives the same counts whatever the number of threads.
+ *
+ *------ EFFICIENCY ------
+ *float : 2 passes over the array, short and byte : 1 pass over the array
+ *Memory : one histogram of 65536 integers per chunk
+ *
+ *Float keys : the bits of a positive float are in the same order than its value, so only the sign bit is flipped.
+ *The bits of a negative float are in the reverse order, so all the bits are flipped. -0 is lower than +0,
+ *otherwise the result is exactly the one of QuickSelect. NaN values are not supported.
+ * @author Jacques Boisvert
+ */
+public class RadixSelect {
+
+	private final static int BINS = 1 << 16;
+	//Smallest number of elements read by a task.
+	private final static int MIN_CHUNK = 1 << 16;
+
+	/**Function median returns the median (n/2+1 smallest element) of a float array.
+	 *
+	 * @param arr - float array, not modified
+	 * @return median value
+	 */
+	public static float median(float [] arr){
+		return select(arr,arr.length/2+1);
+	}
+
+	/**Function median returns the median (n/2+1 smallest element) of a 16 bits array.
+	 * Note : Value are assumed to be in the range 0-65535
+	 * @param arr - short array, not modified
+	 * @return median value (0-65535)
+	 */
+	public static int median(short [] arr){
+		return select(arr,arr.length/2+1);
+	}
+
+	/**Function median returns the median (n/2+1 smallest element) of an 8 bits array.
+	 *
+	 * @param arr - byte array (unsigned values), not modified
+	 * @return median value (0-255)
+	 */
+	public static int median(byte [] arr){
+		return select(arr,arr.length/2+1);
+	}
+
+	/**Function select returns the k-order element of a float array.
+	 *
+	 * @param arr - float array, not modified
+	 * @param k - k-order value to be found, from 1 to arr.length.
+	 * @return value of the k-order element.
+	 */
+	public static float select(float [] arr,int k){
+		return select(arr,k,false,0);
+	}
+
+	/**Function selectDeviation returns the k-order element of the absolute deviations |arr[i] - center|, without
+	 * creating the array of the deviations. The deviations are calculated in float.
+	 * Example : with center the median, the median deviation is the median absolute deviation (MAD).
+	 * @param arr - float array, not modified
+	 * @param center - value subtracted from every element
+	 * @param k - k-order value to be found, from 1 to arr.length.
+	 * @return value of the k-order deviation.
+	 */
+	public static float selectDeviation(float [] arr,float center,int k){
+		return select(arr,k,true,center);
+	}
+
+	/**Function select returns the k-order element of arr, or of |arr - center| if deviation is true.
+	 *
+	 */
+	private static float select(float [] arr,int k,boolean deviation,float center){
+		checkOrder(arr.length,k);
+		//First pass : 16 high bits of the keys.
+		int [] histogram = new int [BINS];
+		Parallel.forBands(arr.length,MIN_CHUNK,(start,end) -> {
+			int [] chunkHistogram = new int [BINS];
+			for(int i = start; i < end;i++)
+				chunkHistogram[key(deviation ? Math.abs(arr[i] - center) : arr[i]) >>> 16]++;
+			merge(histogram,chunkHistogram);
+		});
+		int high = findBin(histogram,k);
+		final int rank = k - countBelow(histogram,high);
+
+		//Second pass : 16 low bits of the keys in the bin of the k-order element.
+		int [] lowHistogram = new int [BINS];
+		Parallel.forBands(arr.length,MIN_CHUNK,(start,end) -> {
+			int [] chunkHistogram = new int [BINS];
+			for(int i = start; i < end;i++){
+				int key = key(deviation ? Math.abs(arr[i] - center) : arr[i]);
+				if(key >>> 16 == high)
+					chunkHistogram[key & 0xffff]++;
+			}
+			merge(lowHistogram,chunkHistogram);
+		});
+		int low = findBin(lowHistogram,rank);
+		return value(high << 16 | low);
+	}
+
+	/**Function select returns the k-order element of a 16 bits array.
+	 * Note : Value are assumed to be in the range 0-65535
+	 * @param arr - short array, not modified
+	 * @param k - k-order value to be found, from 1 to arr.length.
+	 * @return value of the k-order element (0-65535).
+	 */
+	public static int select(short [] arr,int k){
+		checkOrder(arr.length,k);
+		int [] histogram = new int [BINS];
+		Parallel.forBands(arr.length,MIN_CHUNK,(start,end) -> {
+			int [] chunkHistogram = new int [BINS];
+			for(int i = start; i < end;i++)
+				chunkHistogram[arr[i] & 0xffff]++;
+			merge(histogram,chunkHistogram);
+		});
+		return findBin(histogram,k);
+	}
+
+	/**Function select returns the k-order element of an 8 bits array.
+	 *
+	 * @param arr - byte array (unsigned values), not modified
+	 * @param k - k-order value to be found, from 1 to arr.length.
+	 * @return value of the k-order element (0-255).
+	 */
+	public static int select(byte [] arr,int k){
+		checkOrder(arr.length,k);
+		int [] histogram = new int [BINS];
+		Parallel.forBands(arr.length,MIN_CHUNK,(start,end) -> {
+			int [] chunkHistogram = new int [BINS];
+			for(int i = start; i < end;i++)
+				chunkHistogram[arr[i] & 0xff]++;
+			merge(histogram,chunkHistogram);
+		});
+		return findBin(histogram,k);
+	}
+
+	/**Selection of the k-order element of float values that are not in one array (rows read from a file,
+	 * tiles of a large image). The same values are given in every pass with add, in any order : the first pass
+	 * finds the 16 high bits of the key, the second pass the 16 low bits in their bin, as select.
+	 * The counts are long, so there can be more than 2^31 values. A Selection is used by 1 thread.
+	 * Usage : do{ add every value } while(selection.nextPass()); selection.value()
+	 */
+	public static final class Selection{
+		private final long k;
+		private final long [] histogram = new long [BINS];
+		//16 high bits of the key of the k-order element, -1 during the first pass.
+		private int high = -1;
+		//Rank of the k-order element in its bin.
+		private long rank;
+		private boolean done;
+		private float value;
+
+		/**Create the selection of the k-order element.
+		 *
+		 * @param k - k-order value to be found, from 1 to the number of values.
+		 */
+		public Selection(long k){
+			if(k < 1)
+				throw new NumberIsTooSmallException(k,1,true);
+			this.k = k;
+		}
+
+		/**Function add adds values to the current pass.
+		 *
+		 * @param values - float array, not modified
+		 * @param offset - index of the first value
+		 * @param length - number of values
+		 */
+		public void add(float [] values,int offset,int length){
+			if(done)
+				throw new MathIllegalStateException();
+			if(high < 0){
+				for(int i = offset; i < offset+length;i++)
+					histogram[key(values[i]) >>> 16]++;
+			}else{
+				for(int i = offset; i < offset+length;i++){
+					int key = key(values[i]);
+					if(key >>> 16 == high)
+						histogram[key & 0xffff]++;
+				}
+			}
+		}
+
+		/**Function nextPass ends a pass and returns true if the values must be given again.
+		 *
+		 */
+		public boolean nextPass(){
+			if(done)
+				throw new MathIllegalStateException();
+			long count = 0;
+			int bin = 0;
+			if(high < 0){
+				long total = 0;
+				for(long binCount : histogram)
+					total += binCount;
+				if(k > total)
+					throw new OutOfRangeException(k,1,total);
+			}
+			long target = high < 0 ? k : rank;
+			while(count + histogram[bin] < target){
+				count += histogram[bin];
+				bin++;
+			}
+			if(high < 0){
+				high = bin;
+				rank = k - count;
+				Arrays.fill(histogram,0);
+				return true;
+			}
+			value = RadixSelect.value(high << 16 | bin);
+			done = true;
+			return false;
+		}
+
+		/**Return the k-order element, after the last pass.
+		 *
+		 */
+		public float value(){
+			if(!done)
+				throw new MathIllegalStateException();
+			return value;
+		}
+	}
+
+	/**Function key returns an unsigned integer key with the same order as the float value.
+	 *
+	 */
+	static int key(float value){
+		int bits = Float.floatToRawIntBits(value);
+		return bits ^ ((bits >> 31) | 0x80000000);
+	}
+
+	/**Function value returns the float value of a key. Inverse of key.
+	 *
+	 */
+	static float value(int key){
+		return Float.intBitsToFloat(key ^ ((~key >> 31) | 0x80000000));
+	}
+
+	/**Function merge adds the histogram of a chunk to the histogram of the array.
+	 *
+	 */
+	private static void merge(int [] histogram,int [] chunkHistogram){
+		synchronized(histogram){
+			for(int i = 0; i < BINS;i++)
+				histogram[i] += chunkHistogram[i];
+		}
+	}
+
+	/**Function findBin returns the bin containing the k-order element.
+	 *
+	 */
+	private static int findBin(int [] histogram,int k){
+		int count = 0;
+		int bin = 0;
+		while(count + histogram[bin] < k){
+			count += histogram[bin];
+			bin++;
+		}
+		return bin;
+	}
+
+	/**Return the number of elements in the bins lower than bin.
+	 *
+	 */
+	private static int countBelow(int [] histogram,int bin){
+		int count = 0;
+		for(int i = 0; i < bin;i++)
+			count += histogram[i];
+		return count;
+	}
+
+	private static void checkOrder(int length,int k){
+		if(k < 1 || k > length)
+			throw new OutOfRangeException(k,1,length);
+	}
+}
@@ -0,0 +1,57 @@
+/**Robust standard deviation of an image (median / MAD with re-estimation on the inliers).
+ * Same estimator as the original Segmenter.getStd :
+ *  1. median of the pixels
+ *  2. median of the squared residuals (pixel - median)^2
+ *  3. the pixels whose squared residual is lower than (3 sigma)^2, with sigma^2 = 1.4826^2 * median of the squared residuals,
+ *     are the inliers, and std = sqrt(sum of the inlier squared residuals / (number of inliers - 4)).
+ * See Danuser, 1992 or Rousseeuw & Leroy, 1987.
+ *
+ * The squared residual increases with the absolute residual, so the median of the squared residuals is the square of
+ * the median absolute deviation : both medians are found with RadixSelect directly in the pixel array. The input is never
+ * modified and no array of residuals is created. The inliers are summed exactly per band (see ExactSum), so the result
+ * is the same whatever the number of threads, and doesn't lose the precision of a float running sum.
+ *------ EFFICIENCY ------
+ *5 parallel passes over the pixels (2 per median, 1 for the sum), no memory proportional to the image.
+ * @author Jacques Boisvert
+ */
+public class RobustStd {
+
+	//cut-off is roughly at 3 sigma, see Danuser, 1992 or Rousseeuw & Leroy, 1987
+	private final static int K = 3;
+	private final static double MAGIC_NUMBER = Math.pow(1.4826,2);//see same publications
+	//Smallest number of pixels summed by a task.
+	private final static int MIN_CHUNK = 1 << 14;
+
+	/**Function std returns the robust standard deviation of a pixel array.
+	 *
+	 * @param pix - 32 bits float pixel array, not modified
+	 * @return the standard deviation
+	 */
+	public static float std(float [] pix){
+		float median = RadixSelect.median(pix);
+		float deviation = RadixSelect.selectDeviation(pix,median,pix.length/2+1);
+		float resMedian = square(deviation);
+		double limit = K*K;
+
+		ExactSum sumRes = new ExactSum();
+		Parallel.forBands(pix.length,MIN_CHUNK,(start,end) -> {
+			ExactSum bandSum = new ExactSum();
+			for(int i = start; i < end;i++){
+				float res2 = square(pix[i] - median);
+				if(res2 / (MAGIC_NUMBER * resMedian) <= limit)
+					bandSum.add(res2);
+			}
+			synchronized(sumRes){
+				sumRes.add(bandSum);
+			}
+		});
+		return (float)Math.sqrt(sumRes.doubleValue() / (sumRes.getCount()-4));
+	}
+
+	/**Return the square of a residual, rounded to a float.
+	 *
+	 */
+	private static float square(float residual){
+		return (float)((double)residual*residual);
+	}
+}
@@ -0,0 +1,220 @@
+/**Immutable set of parameters of the probabilistic segmentation.
+ * The default constructor gives the default values of the plugin dialog. Every with method returns a copy
+ * with one parameter changed, so a SegmentationParams can be shared freely between threads.
+ * 
+ * Parameters :
+ * fpExp : target maximum expected number of false positives per image.
+ * nseMult : noise multiplicator, a pixel is above the noise if its value is higher than bgValue + noise*nseMult.
+ * bgKernelWidth/bgKernelHeight : median filter mask used to estimate the background. Must be odd and >= 3.
+ * imgKernelWidth/imgKernelHeight : filter mask used to count the pixels above the noise. Must be odd and >= 3.
+ * backgroundSubtraction : if false, the background is the median of the image.
+ * poissonEstimation : not implemented yet, the background is never subtracted if true.
+ * paddingType : Padding.ANTISYMMETRIC, SYMMETRIC, REPLICATE or ZERO. Padding of the median filter.
+ * medianEngine : Filter.MEDIAN_AUTO, MEDIAN_QUICKSELECT, MEDIAN_HISTOGRAM or MEDIAN_NETWORK
+ * bgPyramidFactor : >= 1. If > 1, the background is the approximate median of an image reduced by this factor (see PyramidMedian).
+ * 		1 gives the exact median.
+ * noiseSampleError : target relative standard error of the noise estimate, in [0,1[. The noise is estimated with a sample
+ * 		of the third differences of the image (see NoiseEstimator). 0 uses all the differences.
+ * debug : keep the intermediate images in the result.
+ * tileSize : TiledSegmenter.TILE_NONE (0) processes every stage on the whole image, TILE_AUTO (-1) runs the stages tile by tile
+ * 		with tiles sized from the cache (see TiledSegmenter), > 0 with tiles of tileSize x tileSize pixels. Same masks.
+ * parallelism : maximum number of threads of a segmentation (see Parallel.withParallelism), 0 uses Parallel.getParallelism().
+ * 		Same masks.
+ * 
+ * See Probabilistic_Segmentation for the details of the parameters.
+ * @author Jacques Boisvert
+ */
+public final class SegmentationParams {
+
+	private final double fpExp;
+	private final double nseMult;
+	private final int bgKernelWidth;
+	private final int bgKernelHeight;
+	private final int imgKernelWidth;
+	private final int imgKernelHeight;
+	private final boolean backgroundSubtraction;
+	private final boolean poissonEstimation;
+	private final int paddingType;
+	private final int medianEngine;
+	private final int bgPyramidFactor;
+	private final double noiseSampleError;
+	private final boolean debug;
+	private final int tileSize;
+	private final int parallelism;
+
+	/**Create the default parameters.
+	 * 
+	 */
+	public SegmentationParams(){
+		this(0.5,1.3,5,5,5,5);
+	}
+
+	/**Create parameters with the default options.
+	 * 
+	 * @param fpExp - Target maximum expected number of false positives per image.
+	 * @param nseMult - Noise multiplicator
+	 * @param bgKernelWidth - Background filter width
+	 * @param bgKernelHeight - Background filter height
+	 * @param imgKernelWidth - Image filter width
+	 * @param imgKernelHeight - Image filter height
+	 */
+	public SegmentationParams(double fpExp,double nseMult,int bgKernelWidth,int bgKernelHeight,int imgKernelWidth,int imgKernelHeight){
+		this(fpExp,nseMult,bgKernelWidth,bgKernelHeight,imgKernelWidth,imgKernelHeight,true,false,0,Filter.MEDIAN_AUTO,1,0,false,
+				TiledSegmenter.TILE_NONE,0);
+	}
+
+	private SegmentationParams(double fpExp,double nseMult,int bgKernelWidth,int bgKernelHeight,int imgKernelWidth,int imgKernelHeight,
+			boolean backgroundSubtraction,boolean poissonEstimation,int paddingType,int medianEngine,int bgPyramidFactor,double noiseSampleError,boolean debug,
+			int tileSize,int parallelism){
+		validateKernel(bgKernelWidth);
+		validateKernel(bgKernelHeight);
+		validateKernel(imgKernelWidth);
+		validateKernel(imgKernelHeight);
+		Padding.validate(paddingType);
+		if(medianEngine < Filter.MEDIAN_AUTO || medianEngine > Filter.MEDIAN_NETWORK)
+			throw new OutOfRangeException(medianEngine,Filter.MEDIAN_AUTO,Filter.MEDIAN_NETWORK);
+		if(bgPyramidFactor < 1)
+			throw new NumberIsTooSmallException(bgPyramidFactor,1,true);
+		if(noiseSampleError < 0 || noiseSampleError >= 1)
+			throw new OutOfRangeException(noiseSampleError,0,1);
+		if(tileSize < TiledSegmenter.TILE_AUTO)
+			throw new NumberIsTooSmallException(tileSize,TiledSegmenter.TILE_AUTO,true);
+		if(parallelism < 0)
+			throw new NumberIsTooSmallException(parallelism,0,true);
+		this.fpExp = fpExp;
+		this.nseMult = nseMult;
+		this.bgKernelWidth = bgKernelWidth;
+		this.bgKernelHeight = bgKernelHeight;
+		this.imgKernelWidth = imgKernelWidth;
+		this.imgKernelHeight = imgKernelHeight;
+		this.backgroundSubtraction = backgroundSubtraction;
+		this.poissonEstimation = poissonEstimation;
+		this.paddingType = paddingType;
+		this.medianEngine = medianEngine;
+		this.bgPyramidFactor = bgPyramidFactor;
+		this.noiseSampleError = noiseSampleError;
+		this.debug = debug;
+		this.tileSize = tileSize;
+		this.parallelism = parallelism;
+	}
+
+	/**Function validateKernel throws an exception if the kernel size is < 3 or even.
+	 * 
+	 */
+	private static void validateKernel(int size){
+		if(size < 3)
+			throw new NumberIsTooSmallException(size,3,true);
+		if(size % 2 == 0)
+			throw new MathIllegalArgumentException(LocalizedFormats.NOT_ODD_KERNEL_SIZE,size);
+	}
+
+	public SegmentationParams withImgKernel(int imgKernelWidth,int imgKernelHeight){
+		return new SegmentationParams(fpExp,nseMult,bgKernelWidth,bgKernelHeight,imgKernelWidth,imgKernelHeight,
+				backgroundSubtraction,poissonEstimation,paddingType,medianEngine,bgPyramidFactor,noiseSampleError,debug,tileSize,parallelism);
+	}
+
+	public SegmentationParams withBackgroundSubtraction(boolean backgroundSubtraction){
+		return new SegmentationParams(fpExp,nseMult,bgKernelWidth,bgKernelHeight,imgKernelWidth,imgKernelHeight,
+				backgroundSubtraction,poissonEstimation,paddingType,medianEngine,bgPyramidFactor,noiseSampleError,debug,tileSize,parallelism);
+	}
+
+	public SegmentationParams withPoissonEstimation(boolean poissonEstimation){
+		return new SegmentationParams(fpExp,nseMult,bgKernelWidth,bgKernelHeight,imgKernelWidth,imgKernelHeight,
+				backgroundSubtraction,poissonEstimation,paddingType,medianEngine,bgPyramidFactor,noiseSampleError,debug,tileSize,parallelism);
+	}
+
+	public SegmentationParams withPaddingType(int paddingType){
+		return new SegmentationParams(fpExp,nseMult,bgKernelWidth,bgKernelHeight,imgKernelWidth,imgKernelHeight,
+				backgroundSubtraction,poissonEstimation,paddingType,medianEngine,bgPyramidFactor,noiseSampleError,debug,tileSize,parallelism);
+	}
+
+	public SegmentationParams withMedianEngine(int medianEngine){
+		return new SegmentationParams(fpExp,nseMult,bgKernelWidth,bgKernelHeight,imgKernelWidth,imgKernelHeight,
+				backgroundSubtraction,poissonEstimation,paddingType,medianEngine,bgPyramidFactor,noiseSampleError,debug,tileSize,parallelism);
+	}
+
+	public SegmentationParams withBgPyramidFactor(int bgPyramidFactor){
+		return new SegmentationParams(fpExp,nseMult,bgKernelWidth,bgKernelHeight,imgKernelWidth,imgKernelHeight,
+				backgroundSubtraction,poissonEstimation,paddingType,medianEngine,bgPyramidFactor,noiseSampleError,debug,tileSize,parallelism);
+	}
+
+	public SegmentationParams withNoiseSampleError(double noiseSampleError){
+		return new SegmentationParams(fpExp,nseMult,bgKernelWidth,bgKernelHeight,imgKernelWidth,imgKernelHeight,
+				backgroundSubtraction,poissonEstimation,paddingType,medianEngine,bgPyramidFactor,noiseSampleError,debug,tileSize,parallelism);
+	}
+
+	public SegmentationParams withDebug(boolean debug){
+		return new SegmentationParams(fpExp,nseMult,bgKernelWidth,bgKernelHeight,imgKernelWidth,imgKernelHeight,
+				backgroundSubtraction,poissonEstimation,paddingType,medianEngine,bgPyramidFactor,noiseSampleError,debug,tileSize,parallelism);
+	}
+
+	public SegmentationParams withTileSize(int tileSize){
+		return new SegmentationParams(fpExp,nseMult,bgKernelWidth,bgKernelHeight,imgKernelWidth,imgKernelHeight,
+				backgroundSubtraction,poissonEstimation,paddingType,medianEngine,bgPyramidFactor,noiseSampleError,debug,tileSize,parallelism);
+	}
+
+	public SegmentationParams withParallelism(int parallelism){
+		return new SegmentationParams(fpExp,nseMult,bgKernelWidth,bgKernelHeight,imgKernelWidth,imgKernelHeight,
+				backgroundSubtraction,poissonEstimation,paddingType,medianEngine,bgPyramidFactor,noiseSampleError,debug,tileSize,parallelism);
+	}
+
+	public double getFpExp(){
+		return fpExp;
+	}
+
+	public double getNseMult(){
+		return nseMult;
+	}
+
+	public int getBgKernelWidth(){
+		return bgKernelWidth;
+	}
+
+	public int getBgKernelHeight(){
+		return bgKernelHeight;
+	}
+
+	public int getImgKernelWidth(){
+		return imgKernelWidth;
+	}
+
+	public int getImgKernelHeight(){
+		return imgKernelHeight;
+	}
+
+	public boolean isBackgroundSubtraction(){
+		return backgroundSubtraction;
+	}
+
+	public boolean isPoissonEstimation(){
+		return poissonEstimation;
+	}
+
+	public int getPaddingType(){
+		return paddingType;
+	}
+
+	public int getMedianEngine(){
+		return medianEngine;
+	}
+
+	public int getBgPyramidFactor(){
+		return bgPyramidFactor;
+	}
+
+	public double getNoiseSampleError(){
+		return noiseSampleError;
+	}
+
+	public boolean isDebug(){
+		return debug;
+	}
+
+	public int getTileSize(){
+		return tileSize;
+	}
+
+	public int getParallelism(){
+		return parallelism;
+	}
+}
@@ -0,0 +1,618 @@
+import ij.process.*;
+
+/**Headless entry point of the probabilistic segmentation.
+ * Segmenter works on plain pixel arrays with an immutable SegmentationParams, doesn't use any ImageJ window
+ * or dialog and never changes its input, so it can be called from many threads at once with different parameters.
+ * Invalid parameters or pixel arrays are reported with exceptions instead of IJ.error.
+ * 
+ * Steps : (see Probabilistic_Segmentation for details)
+ * 1- Background estimation with a median filter (exact or with an image pyramid) and subtraction (or median of the image).
+ * 2- Noise estimation with the robust standard deviation of the third difference of the image (or of a sample of it).
+ * 3- Threshold of the pixels higher than bgValue + noise*nseMult.
+ * 4- Mean of the thresholded image over the image filter mask, and threshold at the false positive level.
+ * 8/16 bits images are segmented with integers, without any float copy of the image (see segmentDetailed(short [] ...)).
+ * @author Jonas Dorn, Jacques Boisvert
+ *
+ */
+public class Segmenter {
+
+	/**Result of a segmentation. The intermediate images are null if the parameters are not in debug mode.
+	 * 
+	 */
+	public static final class Result {
+		//Binary image, set for the signal.
+		public final BitMask mask;
+		//Image after the background subtraction. Same as the input if there is no background subtraction.
+		//null if the image was segmented with integers (see integerForeground).
+		public final float [] foreground;
+		//Image after the background subtraction of an 8/16 bits image segmented with integers, null otherwise.
+		public final int [] integerForeground;
+		//Median image (debug)
+		public final float [] background;
+		//Third difference image of size (width-3)*(height-3) (debug)
+		public final float [] diff;
+		//Mean of the thresholded image (debug)
+		public final float [] mean;
+		public final float noise;
+		public final double threshold;
+		//Noise estimate of the third difference image (sample size and relative error).
+		public final NoiseEstimator.Estimate noiseEstimate;
+		//Noise estimated with all the differences (debug, NaN if not calculated)
+		public final float fullNoise;
+		//Number of pixels of the mask that change with fullNoise instead of noise (debug, -1 if not calculated)
+		public final long fullNoiseDifferences;
+		//{rms, max} deviation of the pyramid background from the exact median (debug, null if not calculated)
+		public final double [] backgroundDeviation;
+
+		Result(BitMask mask,float [] foreground,int [] integerForeground,float [] background,float [] diff,float [] mean,float noise,double threshold,
+				NoiseEstimator.Estimate noiseEstimate,float fullNoise,long fullNoiseDifferences,double [] backgroundDeviation){
+			this.mask = mask;
+			this.foreground = foreground;
+			this.integerForeground = integerForeground;
+			this.background = background;
+			this.diff = diff;
+			this.mean = mean;
+			this.noise = noise;
+			this.threshold = threshold;
+			this.noiseEstimate = noiseEstimate;
+			this.fullNoise = fullNoise;
+			this.fullNoiseDifferences = fullNoiseDifferences;
+			this.backgroundDeviation = backgroundDeviation;
+		}
+	}
+
+	/**Function segment returns the segmentation of an image.
+	 * 
+	 * @param pixels - Pixel array of the image. Not modified.
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param params - Segmentation parameters
+	 * @return mask - Binary pixel array, 255 for the signal and 0 otherwise.
+	 */
+	public static byte [] segment(float [] pixels,int width,int height,SegmentationParams params){
+		return segmentDetailed(pixels,width,height,params).mask.toBytes();
+	}
+
+	/**Function segmentDetailed returns the segmentation of an image with the intermediate results.
+	 * 
+	 * @param pixels - Pixel array of the image. Not modified.
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param params - Segmentation parameters
+	 * @return result of the segmentation
+	 */
+	public static Result segmentDetailed(float [] pixels,int width,int height,SegmentationParams params){
+		return segmentDetailed(pixels,width,height,params,null);
+	}
+
+	/**Function segmentDetailed returns the segmentation of a frame of a time-lapse with the intermediate results.
+	 * The noise of the frame is given by the model of the previous frames (see NoiseTracker), which is updated.
+	 * @param pixels - Pixel array of the image. Not modified.
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param params - Segmentation parameters. noiseSampleError is not used with a tracker.
+	 * @param tracker - Noise model of the time-lapse, or null to estimate the noise of the frame alone.
+	 * @return result of the segmentation
+	 */
+	public static Result segmentDetailed(float [] pixels,int width,int height,SegmentationParams params,NoiseTracker tracker){
+		validate(pixels.length,width,height,params);
+		return Parallel.withParallelism(params.getParallelism(),() -> result(foreground(pixels,width,height,params,tracker),width,height,params));
+	}
+
+	/**Function segmentDetailed returns the segmentation of a 16 bits image, calculated with integers.
+	 * The image is not converted to float : the background is the exact median of the integer values (HistogramMedian),
+	 * the foreground is the integer difference of the image and the background (signed), and the pixels above the noise are
+	 * found with an integer threshold. The masks are the same as the ones of the float version of the same image.
+	 * If the background is approximated with a pyramid (bgPyramidFactor > 1), the image is converted and segmented
+	 * with the float version. Every engine gives the same median of integer values : the kernels up to 7x7 use the sorting
+	 * networks (MEDIAN_AUTO or MEDIAN_NETWORK), the other kernels and engines the integer histogram.
+	 * @param pixels - 16 bits pixel array (unsigned values). Not modified.
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param params - Segmentation parameters. noiseSampleError is not used with a tracker.
+	 * @param tracker - Noise model of the time-lapse, or null to estimate the noise of the frame alone.
+	 * @return result of the segmentation, with integerForeground (or foreground if the float version was used)
+	 */
+	public static Result segmentDetailed(short [] pixels,int width,int height,SegmentationParams params,NoiseTracker tracker){
+		validate(pixels.length,width,height,params);
+		if(!isInteger(params))
+			return segmentDetailed(toFloat(pixels),width,height,params,tracker);
+		return Parallel.withParallelism(params.getParallelism(),() -> result(integerForeground(pixels,width,height,params,tracker),width,height,params));
+	}
+
+	/**Function segmentDetailed returns the segmentation of an 8 bits image, calculated with integers.
+	 * Same as the 16 bits version.
+	 * @param pixels - 8 bits pixel array (unsigned values). Not modified.
+	 */
+	public static Result segmentDetailed(byte [] pixels,int width,int height,SegmentationParams params,NoiseTracker tracker){
+		validate(pixels.length,width,height,params);
+		if(!isInteger(params))
+			return segmentDetailed(toFloat(pixels),width,height,params,tracker);
+		return Parallel.withParallelism(params.getParallelism(),() -> result(integerForeground(pixels,width,height,params,tracker),width,height,params));
+	}
+
+	/**Function isInteger returns true if the 8/16 bits images are segmented with integers with these parameters.
+	 * 
+	 */
+	public static boolean isInteger(SegmentationParams params){
+		return !params.isBackgroundSubtraction() || params.getBgPyramidFactor() == 1;
+	}
+
+	/**Function result counts the pixels above the noise in the image filter mask, and thresholds at the false positive level.
+	 * 
+	 */
+	private static Result result(Foreground fg,int width,int height,SegmentationParams params){
+		/**Threshold parameters
+		 * 
+		 */
+		int avgMaskSize = params.getImgKernelWidth() * params.getImgKernelHeight(); //* imgKernelDepth;
+		int idx = thresholdIndex(avgMaskSize,width*height,params.getNseMult(),params.getFpExp());
+
+		float [] meanDebug = null;
+		if (params.isDebug()){
+			meanDebug = (float [])Filter.meanFastFilter(fg.binary(fg.thresh),params.getImgKernelWidth(),params.getImgKernelHeight()).getPixels();
+		}
+		//Count the pixels above the noise in the image filter mask, and threshold at the false positive level.
+		BitMask mask = fg.count(fg.thresh,params,idx);
+		long fullNoiseDifferences = -1;
+		if (params.isDebug() && fg.noiseEstimate.isSampled()){
+			//Check of the sampled noise : mask with the noise of all the differences.
+			double fullThresh = fg.bgValue + fg.fullNoise * params.getNseMult();
+			BitMask fullMask = fg.count(fullThresh,params,idx);
+			fullNoiseDifferences = mask.countDifferences(fullMask);
+		}
+		float [] fgPix = fg.ip == null ? null : (float [])fg.ip.getPixels();
+		return new Result(mask,fgPix,fg.integerPix,fg.backgroundDebug,fg.diffDebug,meanDebug,fg.noise,fg.thresh,
+				fg.noiseEstimate,fg.fullNoise,fullNoiseDifferences,fg.backgroundDeviation);
+	}
+
+	/**Function segmentSweep returns the segmentation of an image for many image filter sizes.
+	 * The background, the noise and the pixel threshold only depend on the other parameters, so they are calculated once,
+	 * and the means of every image filter size are found with the same IntegralImage.
+	 * The masks are the same as the ones of segment with the same image filter size.
+	 * @param pixels - Pixel array of the image. Not modified.
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param params - Segmentation parameters. The image filter size is replaced by the sizes of the sweep.
+	 * @param imgKernelWidths - Image filter widths
+	 * @param imgKernelHeights - Image filter heights, same length as imgKernelWidths
+	 * @return masks - masks[i] is the binary pixel array of the image filter imgKernelWidths[i] x imgKernelHeights[i].
+	 */
+	public static byte [][] segmentSweep(float [] pixels,int width,int height,SegmentationParams params,int [] imgKernelWidths,int [] imgKernelHeights){
+		validate(pixels.length,width,height,params);
+		if(imgKernelWidths.length != imgKernelHeights.length)
+			throw new DimensionMismatchException(imgKernelHeights.length,imgKernelWidths.length);
+		SegmentationParams [] sweep = new SegmentationParams [imgKernelWidths.length];
+		for(int i = 0; i < sweep.length;i++)
+			sweep[i] = params.withImgKernel(imgKernelWidths[i],imgKernelHeights[i]);
+		return Parallel.withParallelism(params.getParallelism(),() -> sweep(pixels,width,height,params,sweep));
+	}
+
+	/**Function sweep calculates the masks of segmentSweep.
+	 * 
+	 */
+	private static byte [][] sweep(float [] pixels,int width,int height,SegmentationParams params,SegmentationParams [] sweep){
+		Foreground fg = foreground(pixels,width,height,params,null);
+		IntegralImage integral = new IntegralImage(threshold(fg.ip,fg.thresh));
+		byte [][] masks = new byte [sweep.length][];
+		for(int i = 0; i < sweep.length;i++){
+			int avgMaskSize = sweep[i].getImgKernelWidth() * sweep[i].getImgKernelHeight();
+			int idx = thresholdIndex(avgMaskSize,width*height,params.getNseMult(),params.getFpExp());
+			masks[i] = integral.binaryMeanThreshold(sweep[i].getImgKernelWidth(),sweep[i].getImgKernelHeight(),idx,avgMaskSize);
+		}
+		return masks;
+	}
+
+	/**Steps of the segmentation that don't depend on the image filter : background, noise and pixel threshold.
+	 * 
+	 */
+	private static final class Foreground {
+		//Image after the background subtraction (float version)
+		ImageProcessor ip;
+		//Image after the background subtraction (integer version)
+		int [] integerPix;
+		int width;
+		int height;
+		float [] backgroundDebug;
+		float [] diffDebug;
+		double [] backgroundDeviation;
+		int bgValue;
+		NoiseEstimator.Estimate noiseEstimate;
+		float noise;
+		//Noise of all the differences (debug)
+		float fullNoise = Float.NaN;
+		double thresh;
+		//Tile size of the count, TiledSegmenter.TILE_NONE if the background was calculated on the whole image.
+		int tileSize = TiledSegmenter.TILE_NONE;
+
+		/**Function count returns the mask of the image filter kernels containing enough pixels of the foreground higher than thresh.
+		 * 
+		 */
+		BitMask count(double thresh,SegmentationParams params,int idx){
+			if(integerPix == null && tileSize != TiledSegmenter.TILE_NONE)
+				return TiledSegmenter.countThreshold((float [])ip.getPixels(),width,height,thresh,
+						params.getImgKernelWidth(),params.getImgKernelHeight(),idx,tileSize);
+			return mask(thresh).countThreshold(params.getImgKernelWidth(),params.getImgKernelHeight(),idx);
+		}
+
+		/**Function mask returns the mask of the pixels of the foreground higher than thresh.
+		 * 
+		 */
+		BitMask mask(double thresh){
+			if(integerPix != null)
+				return BitMask.threshold(integerPix,width,height,thresh);
+			return BitMask.threshold((float [])ip.getPixels(),width,height,thresh);
+		}
+
+		/**Function binary returns the byte image (0|1) of the pixels of the foreground higher than thresh.
+		 * 
+		 */
+		ImageProcessor binary(double thresh){
+			if(integerPix != null){
+				byte [] bytePix = mask(thresh).toBytes();
+				for(int i = 0; i < bytePix.length;i++)
+					bytePix[i] = (byte)(bytePix[i] & 1);
+				return new ByteProcessor(width,height,bytePix);
+			}
+			return threshold(ip,thresh);
+		}
+	}
+
+	/**Function validate throws an exception if the parameters or the pixel array can't be segmented.
+	 * 
+	 */
+	private static void validate(int length,int width,int height,SegmentationParams params){
+		if(params == null)
+			throw new MathIllegalArgumentException(LocalizedFormats.NULL_NOT_ALLOWED);
+		if(length != width*height)
+			throw new DimensionMismatchException(length,width*height);
+		if(Math.min(width,height) < 4)//The third difference needs at least 4 rows/columns.
+			throw new NumberIsTooSmallException(Math.min(width,height),4,true);
+	}
+
+	/**Function foreground estimates the background and the noise of an image, and the threshold of the pixels above the noise.
+	 * 
+	 * @param pixels - Pixel array of the image. Not modified.
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param params - Segmentation parameters
+	 * @param tracker - Noise model of the previous frames, null to estimate the noise of the image alone.
+	 * @return foreground of the image
+	 */
+	private static Foreground foreground(float [] pixels,int width,int height,SegmentationParams params,NoiseTracker tracker){
+		Foreground fg = new Foreground();
+		fg.width = width;
+		fg.height = height;
+		boolean debug = params.isDebug();
+		boolean tiled = params.isBackgroundSubtraction() && TiledSegmenter.isTiled(params);
+		ImageProcessor ip = new FloatProcessor(width,height,tiled ? new float [width*height] : pixels.clone());
+		int bgValue = 0;
+
+		/**ESTIMATE BACKGROUND
+		 * 
+		 */
+		if (tiled){
+			//Median and subtraction tile by tile, the background image is only kept for debug.
+			fg.backgroundDebug = debug ? new float [width*height] : null;
+			TiledSegmenter.foreground(pixels,width,height,params,(float [])ip.getPixels(),fg.backgroundDebug);
+			fg.tileSize = params.getTileSize();
+		}
+		else if (params.isBackgroundSubtraction()){
+ 
+			ImageProcessor backgroundProcessor = PyramidMedian.medianFilter(ip,params.getBgKernelWidth(),params.getBgKernelHeight(),
+					params.getPaddingType(),params.getMedianEngine(),params.getBgPyramidFactor());
+			
+			if (debug){
+				fg.backgroundDebug = (float [])backgroundProcessor.getPixels();
+				if (params.getBgPyramidFactor() > 1){
+					//Deviation of the approximate background from the exact median.
+					ImageProcessor exactBackground = Filter.medianFilter(ip,params.getBgKernelWidth(),params.getBgKernelHeight(),
+							params.getPaddingType(),params.getMedianEngine());
+					fg.backgroundDeviation = PyramidMedian.deviation(fg.backgroundDebug,(float [])exactBackground.getPixels());
+				}
+			}
+			if (params.isPoissonEstimation()){
+				
+			}else{
+				//Subtract the image with the background
+				subtract(ip,backgroundProcessor);
+			}
+		}
+		else{
+			float med = RadixSelect.median(pixels);
+			bgValue = (int)med;
+		}
+
+		/**ESTIMATE NOISE
+		 * 
+		 */
+		//Robust std of the third difference between rows then between columns, from a sample of the differences
+		//if noiseSampleError > 0 (see NoiseEstimator), or from the model of the previous frames if the noise is tracked.
+		float [] pix = (float [])ip.getPixels();
+		NoiseEstimator.Estimate fullEstimate = null;
+		if (debug){
+			fg.diffDebug = FiniteDifference.thirdDifference(pix,width,height);
+			fullEstimate = NoiseEstimator.estimate(fg.diffDebug);
+			fg.fullNoise = fullEstimate.std/20;
+		}
+		if (tracker != null)
+			fg.noiseEstimate = tracker.update(pix,width,height);
+		else if (fullEstimate != null && params.getNoiseSampleError() == 0)
+			fg.noiseEstimate = fullEstimate;
+		else
+			fg.noiseEstimate = NoiseEstimator.estimate(pix,width,height,params.getNoiseSampleError());
+
+		fg.noise = fg.noiseEstimate.std/20;
+
+		/**THRESHOLD
+		 * 
+		 */
+		fg.bgValue = bgValue;
+		fg.thresh = bgValue + fg.noise * params.getNseMult();
+		fg.ip = ip;
+		return fg;
+	}
+
+	/**Function integerForeground estimates the background and the noise of an 8/16 bits image with integers,
+	 * and the threshold of the pixels above the noise. Same steps as foreground.
+	 * 
+	 * @param pixels - short [] or byte [] pixel array of the image (unsigned values). Not modified.
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param params - Segmentation parameters, with isInteger(params)
+	 * @param tracker - Noise model of the previous frames, null to estimate the noise of the image alone.
+	 * @return foreground of the image
+	 */
+	private static Foreground integerForeground(Object pixels,int width,int height,SegmentationParams params,NoiseTracker tracker){
+		Foreground fg = new Foreground();
+		fg.width = width;
+		fg.height = height;
+		boolean debug = params.isDebug();
+		int [] fgPix = new int [width*height];
+		int bgValue = 0;
+
+		/**ESTIMATE BACKGROUND
+		 * 
+		 */
+		if (params.isBackgroundSubtraction()){
+			//The medians of every row are subtracted as soon as they are calculated, so no background image is created.
+			boolean subtract = !params.isPoissonEstimation();
+			if (!subtract)
+				toInt(pixels,fgPix);
+			float [] backgroundDebug = debug ? new float [width*height] : null;
+			HistogramMedian.MedianRows output = (row,medians) -> {
+				int offset = row*width;
+				if (subtract)
+					subtractRow(pixels,offset,medians,fgPix);
+				if (backgroundDebug != null)
+					System.arraycopy(medians,0,backgroundDebug,offset,width);
+			};
+			int bgWidth = params.getBgKernelWidth();
+			int bgHeight = params.getBgKernelHeight();
+			if (NetworkMedian.isSupported(bgWidth,bgHeight) && params.getMedianEngine() != Filter.MEDIAN_HISTOGRAM
+					&& params.getMedianEngine() != Filter.MEDIAN_QUICKSELECT){
+				//Small kernels : the networks on the float values are faster than the histogram (same medians).
+				float [] floatPix = pixels instanceof short [] ? toFloat((short [])pixels) : toFloat((byte [])pixels);
+				float [] background = NetworkMedian.filter(floatPix,width,height,bgWidth,bgHeight,params.getPaddingType());
+				float [] medians = new float [width];
+				for (int row = 0; row < height;row++){
+					System.arraycopy(background,row*width,medians,0,width);
+					output.row(row,medians);
+				}
+			}
+			else if (pixels instanceof short [])
+				HistogramMedian.filter((short [])pixels,width,height,bgWidth,bgHeight,params.getPaddingType(),output);
+			else
+				HistogramMedian.filter((byte [])pixels,width,height,bgWidth,bgHeight,params.getPaddingType(),output);
+			fg.backgroundDebug = backgroundDebug;
+		}
+		else{
+			bgValue = pixels instanceof short [] ? RadixSelect.median((short [])pixels) : RadixSelect.median((byte [])pixels);
+			toInt(pixels,fgPix);
+		}
+
+		/**ESTIMATE NOISE
+		 * 
+		 */
+		NoiseEstimator.Estimate fullEstimate = null;
+		if (debug){
+			fg.diffDebug = FiniteDifference.thirdDifference(fgPix,width,height);
+			fullEstimate = NoiseEstimator.estimate(fg.diffDebug);
+			fg.fullNoise = fullEstimate.std/20;
+		}
+		if (tracker != null)
+			fg.noiseEstimate = tracker.update(fgPix,width,height);
+		else if (fullEstimate != null && params.getNoiseSampleError() == 0)
+			fg.noiseEstimate = fullEstimate;
+		else
+			fg.noiseEstimate = NoiseEstimator.estimate(fgPix,width,height,params.getNoiseSampleError());
+
+		fg.noise = fg.noiseEstimate.std/20;
+
+		/**THRESHOLD
+		 * 
+		 */
+		fg.bgValue = bgValue;
+		fg.thresh = bgValue + fg.noise * params.getNseMult();
+		fg.integerPix = fgPix;
+		return fg;
+	}
+
+	/**Function subtractRow calculates the signed difference of a row of an 8/16 bits image and its medians.
+	 * 
+	 */
+	private static void subtractRow(Object pixels,int offset,float [] medians,int [] fgPix){
+		if (pixels instanceof short []){
+			short [] pix = (short [])pixels;
+			for(int col = 0; col < medians.length;col++)
+				fgPix[offset+col] = (pix[offset+col] & 0xffff) - (int)medians[col];
+		}else{
+			byte [] pix = (byte [])pixels;
+			for(int col = 0; col < medians.length;col++)
+				fgPix[offset+col] = (pix[offset+col] & 0xff) - (int)medians[col];
+		}
+	}
+
+	/**Function toInt copies the unsigned values of an 8/16 bits image in an integer array.
+	 * 
+	 */
+	private static void toInt(Object pixels,int [] intPix){
+		if (pixels instanceof short []){
+			short [] pix = (short [])pixels;
+			for(int i = 0; i < intPix.length;i++)
+				intPix[i] = pix[i] & 0xffff;
+		}else{
+			byte [] pix = (byte [])pixels;
+			for(int i = 0; i < intPix.length;i++)
+				intPix[i] = pix[i] & 0xff;
+		}
+	}
+
+	/**Function toFloat returns the float values of an 8/16 bits image.
+	 * 
+	 */
+	private static float [] toFloat(short [] pixels){
+		float [] pix = new float [pixels.length];
+		for(int i = 0; i < pix.length;i++)
+			pix[i] = pixels[i] & 0xffff;
+		return pix;
+	}
+
+	private static float [] toFloat(byte [] pixels){
+		float [] pix = new float [pixels.length];
+		for(int i = 0; i < pix.length;i++)
+			pix[i] = pixels[i] & 0xff;
+		return pix;
+	}
+
+	/**Function thresholdIndex returns the smallest number of pixels above the noise in the image filter mask
+	 * for which the expected number of false positives in the image is lower than fpExp.
+	 * The number of pixels above the noise in a mask follows a binomial distribution.
+	 * The indexes are cached, so the slices of a stack only calculate it once (see ThresholdTable).
+	 * @param avgMaskSize - Number of pixels in the image filter mask
+	 * @param nPixels - Number of pixels in the image
+	 * @param nseMult - Noise multiplicator
+	 * @param fpExp - Target maximum expected number of false positives per image.
+	 * @return idx - 0 if no number of pixels gives less than fpExp false positives.
+	 */
+	public static int thresholdIndex(int avgMaskSize,long nPixels,double nseMult,double fpExp){
+		return ThresholdTable.thresholdIndex(avgMaskSize,nPixels,nseMult,fpExp);
+	}
+
+	/**Function subtract calculates the subtraction of two float image processor
+	 * NOTE : The initial image is changed
+	 * @param destination - First image
+	 * @param source - image use for the subtraction
+	 * 
+	 */
+	public static void subtract(ImageProcessor destination, ImageProcessor source){
+		int width = destination.getWidth();
+		int height = destination.getHeight();
+		float [] pix1 = (float [])destination.getPixels();
+		float [] pix2 = (float [] ) source.getPixels();
+		Parallel.forBands(height,(start,end) -> {
+			for(int row = start;row < end;row++){
+				int offset = row*width;
+				for(int col = 0; col < width;col++){
+					pix1[col+offset] = pix1[col+offset] - pix2[col+offset];
+				}
+			}
+		});
+		destination.setPixels(pix1);
+	}
+
+
+	/**Function diffCol calculates the nth difference between columns
+	 * Recursion is used for each subsequent difference.
+	 * @param destination - Float image processor
+	 * @param n - nth difference
+	 * @return diffCol - Float image processor of the nth difference
+	 */
+	static ImageProcessor diffCol(ImageProcessor destination, int n){
+		int destWidth = destination.getWidth();
+		ImageProcessor diffIP = new FloatProcessor(destWidth-1,destination.getHeight());
+		int width = diffIP.getWidth();
+		int height = diffIP.getHeight();
+		float [] diffPix = (float [] ) diffIP.getPixels();
+		float [] pix = (float [] ) destination.getPixels();
+
+		Parallel.forBands(height,(start,end) -> {
+			for(int row = start; row < end;row++){
+				int offset = row*width;
+				int diffOffset = row * destWidth;
+				for(int col = 0; col < width;col++){
+					diffPix[col+offset] = pix[col+diffOffset+1] - pix[col+diffOffset];
+				}
+			}
+		});
+		if(n == 1)
+			return diffIP;
+		else
+			return diffCol(diffIP,n-1);
+	}
+
+	/**Function diffRow calculates the nth difference between rows.
+	 * Recursion is used for each subsequent difference. n-1,n-2...n-(n-1) 
+	 * @param destination - Float image processor
+	 * @param n - The nth difference
+	 * @return diffRow - Float image  processor of the nth difference
+	 */
+	static ImageProcessor diffRow(ImageProcessor destination, int n){
+		int destWidth = destination.getWidth();
+		ImageProcessor diffIP = new FloatProcessor(destWidth,destination.getHeight()-1);
+		int width = diffIP.getWidth();
+		int height = diffIP.getHeight();
+		float [] diffPix = (float [] ) diffIP.getPixels();
+		float [] pix = (float [] ) destination.getPixels();
+
+		//Every band reads the first row of the next band.
+		Parallel.forBands(height,(start,end) -> {
+			for(int row = start; row < end;row++){
+				int offset = row*width;
+				for(int col = 0; col < width;col++){
+					diffPix[col+offset] = pix[col+offset+width] - pix[col+offset];
+				}
+			}
+		});
+		if(n == 1)
+			return diffIP;
+		else
+			return diffRow(diffIP,n-1);
+	}
+
+	/**Function that calculate the standard deviation of an image.
+	 * Robust estimator, see RobustStd. The image is not modified.
+	 * @param ip - Image processor containing the pixels value for the image
+	 * @return the standard deviation
+	 */
+	static float getStd(ImageProcessor ip){
+		return RobustStd.std((float []) ip.getPixels());
+	}
+
+	/**Function that return a byte image where pix[i,j] is 1 if pix[i,j] > threshold and 0 otherwise
+	 * 
+	 * @param ip - float image processor to threshold
+	 * @param thresh - threshold level
+	 * @return byte image processor with value 0|1
+	 */
+	static ImageProcessor threshold(ImageProcessor ip,double thresh){
+		int height = ip.getHeight();
+		int width = ip.getWidth();
+		float [] pix = (float [] )ip.getPixels();
+		byte [] bytePix = new byte [height*width];
+
+		Parallel.forBands(height,(start,end) -> {
+			for(int row = start ; row < end; row++){
+				int offset = row * width;
+				for(int col = 0 ; col < width; col++){
+					if(pix[offset + col] > thresh)
+						bytePix[offset+col] = (byte) 1;
+					else
+						bytePix[offset+col] = 0;
+				}
+			}
+		});
+		ImageProcessor binaryIP = new ByteProcessor(width,height,bytePix);
+		return binaryIP;
+	}
+}
@@ -0,0 +1,223 @@
+import java.util.Arrays;
+
+/**Median selection networks for small arrays (kernels from 3x3 to 7x7).
+ * A sorting network is a fixed sequence of compare-exchange operations, so it has no data dependent branch,
+ * no allocation and no recursion. The networks are built from Batcher's odd-even merge sort, then pruned so only
+ * the operations that can change the median element remain. The pruned network of every size up to MAX_SIZE
+ * is built once when the class is loaded.
+ *
+ * Every operation of a network is stored as 3 integers : i, j and type.
+ * type BOTH : arr[i] = min(arr[i],arr[j]) and arr[j] = max(arr[i],arr[j])
+ * type MIN  : arr[i] = min(arr[i],arr[j]) (arr[j] isn't used anymore)
+ * type MAX  : arr[j] = max(arr[i],arr[j]) (arr[i] isn't used anymore)
+ * Note : The array is changed by the network, and is only partially sorted after the call.
+ * @author Jacques Boisvert
+ */
+public class SortingNetwork {
+
+	//Largest array handled by a network (7x7 kernel).
+	public final static int MAX_SIZE = 49;
+
+	private final static int BOTH = 0;
+	private final static int MIN = 1;
+	private final static int MAX = 2;
+
+	private final static int [][] medianNetworks = new int [MAX_SIZE+1][];
+
+	static{
+		for(int n = 1; n <= MAX_SIZE;n++){
+			medianNetworks[n] = prune(batcher(n),n/2);
+		}
+	}
+
+	/**Function batcher creates the comparators of Batcher's odd-even merge sort for n elements.
+	 * The network of the next power of 2 is created and the comparators using an element >= n are removed,
+	 * which is the same as padding the array with +infinity.
+	 * @param n - Number of elements
+	 * @return comparators - {i0,j0,i1,j1...} with i < j.
+	 */
+	private static int [] batcher(int n){
+		int size = 1;
+		while(size < n)
+			size <<= 1;
+		int [] comparators = new int [16];
+		int count = 0;
+		for(int p = 1; p < size;p <<= 1){
+			for(int k = p; k >= 1;k >>= 1){
+				for(int j = k % p; j + k < size;j += 2*k){
+					for(int i = 0; i < Math.min(k,size-j-k);i++){
+						if((i+j) / (2*p) == (i+j+k) / (2*p) && i+j+k < n){
+							if(count + 2 > comparators.length)
+								comparators = Arrays.copyOf(comparators,comparators.length*2);
+							comparators[count++] = i+j;
+							comparators[count++] = i+j+k;
+						}
+					}
+				}
+			}
+		}
+		return Arrays.copyOf(comparators,count);
+	}
+
+	/**Function prune removes the comparators that can't change the element at index output.
+	 * The network is traversed backward, keeping track of the elements needed to calculate the output.
+	 * @param comparators - {i0,j0,i1,j1...}
+	 * @param output - index of the element of interest after the network.
+	 * @return operations - {i0,j0,type0,i1,j1,type1...}
+	 */
+	private static int [] prune(int [] comparators,int output){
+		int nComparators = comparators.length/2;
+		boolean [] needed = new boolean [MAX_SIZE];
+		needed[output] = true;
+		int [] operations = new int [nComparators*3];
+		int count = nComparators;
+		for(int c = nComparators-1; c >= 0;c--){
+			int i = comparators[2*c];
+			int j = comparators[2*c+1];
+			if(!needed[i] && !needed[j])
+				continue;
+			count--;
+			operations[count*3] = i;
+			operations[count*3+1] = j;
+			operations[count*3+2] = needed[i] && needed[j] ? BOTH : (needed[i] ? MIN : MAX);
+			needed[i] = true;
+			needed[j] = true;
+		}
+		return Arrays.copyOfRange(operations,count*3,nComparators*3);
+	}
+
+	/**Return the number of compare-exchange operations of the median network of n elements.
+	 *
+	 */
+	public static int size(int n){
+		return medianNetworks[n].length/3;
+	}
+
+	/**Function median returns the median (n/2+1 smallest element) of arr[left..left+n-1].
+	 *
+	 * @param arr - float array, changed by the function
+	 * @param left - first element
+	 * @param n - number of elements, <= MAX_SIZE
+	 * @return median value
+	 */
+	public static float median(float [] arr,int left,int n){
+		int [] network = medianNetworks[n];
+		for(int o = 0; o < network.length;o += 3){
+			int i = left + network[o];
+			int j = left + network[o+1];
+			float a = arr[i];
+			float b = arr[j];
+			int type = network[o+2];
+			if(type != MAX)
+				arr[i] = a < b ? a : b;
+			if(type != MIN)
+				arr[j] = a < b ? b : a;
+		}
+		return arr[left+n/2];
+	}
+
+	/**Function median returns the median (n/2+1 smallest element) of arr[left..left+n-1].
+	 *
+	 * @param arr - int array, changed by the function
+	 * @param left - first element
+	 * @param n - number of elements, <= MAX_SIZE
+	 * @return median value
+	 */
+	public static int median(int [] arr,int left,int n){
+		int [] network = medianNetworks[n];
+		for(int o = 0; o < network.length;o += 3){
+			int i = left + network[o];
+			int j = left + network[o+1];
+			int a = arr[i];
+			int b = arr[j];
+			int type = network[o+2];
+			if(type != MAX)
+				arr[i] = Math.min(a,b);
+			if(type != MIN)
+				arr[j] = Math.max(a,b);
+		}
+		return arr[left+n/2];
+	}
+
+	/**Function median returns the median (n/2+1 smallest element) of arr[left..left+n-1].
+	 * Note : Value are assumed to be in the range 0-65535
+	 * @param arr - short array, changed by the function
+	 * @param left - first element
+	 * @param n - number of elements, <= MAX_SIZE
+	 * @return median value
+	 */
+	public static short median(short [] arr,int left,int n){
+		int [] network = medianNetworks[n];
+		for(int o = 0; o < network.length;o += 3){
+			int i = left + network[o];
+			int j = left + network[o+1];
+			short a = arr[i];
+			short b = arr[j];
+			boolean lower = (a & 0xffff) < (b & 0xffff);//short -> int
+			int type = network[o+2];
+			if(type != MAX)
+				arr[i] = lower ? a : b;
+			if(type != MIN)
+				arr[j] = lower ? b : a;
+		}
+		return arr[left+n/2];
+	}
+
+	/**Function median returns the median (n/2+1 smallest element) of arr[left..left+n-1].
+	 * Note : Value are assumed to be in the range 0-255
+	 * @param arr - byte array, changed by the function
+	 * @param left - first element
+	 * @param n - number of elements, <= MAX_SIZE
+	 * @return median value
+	 */
+	public static byte median(byte [] arr,int left,int n){
+		int [] network = medianNetworks[n];
+		for(int o = 0; o < network.length;o += 3){
+			int i = left + network[o];
+			int j = left + network[o+1];
+			byte a = arr[i];
+			byte b = arr[j];
+			boolean lower = (a & 0xff) < (b & 0xff);//byte -> int
+			int type = network[o+2];
+			if(type != MAX)
+				arr[i] = lower ? a : b;
+			if(type != MIN)
+				arr[j] = lower ? b : a;
+		}
+		return arr[left+n/2];
+	}
+
+	/**Function median finds the medians (n/2+1 smallest element) of length arrays of n elements at once.
+	 * Element e of array p is values[e][p] : every operation of the network is applied to all the arrays with
+	 * a loop without branch over p, which can be vectorized by the JIT compiler.
+	 * @param values - n rows of at least length values, changed by the function
+	 * @param n - number of elements, <= MAX_SIZE
+	 * @param length - number of arrays
+	 * @return medians - values[n/2], the row of the medians
+	 */
+	public static float [] median(float [][] values,int n,int length){
+		int [] network = medianNetworks[n];
+		for(int o = 0; o < network.length;o += 3){
+			float [] low = values[network[o]];
+			float [] high = values[network[o+1]];
+			int type = network[o+2];
+			if(type == BOTH){
+				for(int p = 0; p < length;p++){
+					float a = low[p];
+					float b = high[p];
+					low[p] = Math.min(a,b);
+					high[p] = Math.max(a,b);
+				}
+			}
+			else if(type == MIN){
+				for(int p = 0; p < length;p++)
+					low[p] = Math.min(low[p],high[p]);
+			}
+			else{
+				for(int p = 0; p < length;p++)
+					high[p] = Math.max(low[p],high[p]);
+			}
+		}
+		return values[n/2];
+	}
+}
@@ -0,0 +1,445 @@
+import java.util.function.Supplier;
+
+/**Segmentation of an image read row by row, with a memory proportional to the width of the image and the kernel heights
+ * instead of the size of the image.
+ * Segmenter creates whole images between the stages (background, foreground, pixels above the noise, counts, mask).
+ * Here every stage only keeps the rows its kernel needs, in small rings :
+ *  - image rows : bgKernelHeight+1 rows (the rows are read in increasing order, see RowSource)
+ *  - background : the padded rows of the median kernel (see Padding.Rows), the medians are calculated row by row
+ *  - noise : the 4 rows of foreground of the third differences, and the sampled differences (see NoiseEstimator)
+ *  - count : imgKernelHeight+1 rows of pixels above the noise and one count per column (see BitMask.countThreshold)
+ * so a strip of a line-scan camera or of a slide scanner can be segmented without ever existing as one array.
+ *
+ * The pixel threshold depends on the noise of the whole image, so the image is read in passes :
+ *  1. (sliding histogram engine only) range of the padded image, for the bins of the histogram (see HistogramMedian).
+ *     (without background subtraction) 2 passes for the median of the image (see RadixSelect.Selection).
+ *  2. Noise : only the rows of the grid of the sampled differences are filtered, 4 rows every grid step.
+ *  3. Mask : every row is filtered, subtracted, thresholded and counted, and the rows of the mask are written in order.
+ * The noise is always estimated from a sample of the differences (all the differences need the whole image) : if noiseSampleError
+ * is 0, DEFAULT_SAMPLE_ERROR is used. The masks are then the same as the ones of Segmenter.segment with the same parameters
+ * and noiseSampleError = sampleError(params).
+ * The pyramid background (bgPyramidFactor > 1), the noise tracker and the debug images are not supported.
+ *------ EFFICIENCY ------
+ *Memory : O(width * (bgKernelHeight + imgKernelHeight)) + the noise sample, independent of the image height
+ *Time : 1 median of the image + the medians of the rows of the noise grid, in the calling thread
+ * @author Jacques Boisvert
+ */
+public class StreamSegmenter {
+
+	//Relative error of the noise estimate when noiseSampleError is 0.
+	public final static double DEFAULT_SAMPLE_ERROR = 0.01;
+	//Engine of the segmentations without background median (see engine).
+	final static int NO_BACKGROUND = -1;
+
+	/**Rows of the image to segment.
+	 * The rows of a pass are read in increasing order, and some rows may be skipped. Every pass starts again from the top
+	 * of the image, so the source must be able to read the image again (a file, or a strip buffered on disk).
+	 */
+	public interface RowSource{
+		/**Function read copies row y of the image in dest.
+		 *
+		 * @param y - row, from 0 to height-1
+		 * @param dest - array receiving the width values of the row
+		 * @param destOffset - index of pixel 0 of the row in dest
+		 */
+		void read(int y,float [] dest,int destOffset);
+	}
+
+	/**Receiver of the rows of the mask, in order.
+	 *
+	 */
+	public interface RowSink{
+		/**Function write receives a row of the mask. The array is reused for the next row.
+		 *
+		 * @param y - row of the mask
+		 * @param mask - binary values 0|255 of the row
+		 */
+		void write(int y,byte [] mask);
+	}
+
+	/**Noise and threshold of a streamed segmentation.
+	 *
+	 */
+	public static final class Result{
+		//Noise of the image (robust std of the third difference / 20)
+		public final float noise;
+		//Threshold of the pixels above the noise
+		public final double threshold;
+		public final NoiseEstimator.Estimate noiseEstimate;
+		//Number of pixels of the mask
+		public final long maskPixels;
+		//Number of passes over the image
+		public final int passes;
+
+		Result(float noise,double threshold,NoiseEstimator.Estimate noiseEstimate,long maskPixels,int passes){
+			this.noise = noise;
+			this.threshold = threshold;
+			this.noiseEstimate = noiseEstimate;
+			this.maskPixels = maskPixels;
+			this.passes = passes;
+		}
+	}
+
+	/**Function segment segments an image read row by row, and writes the rows of the mask in order.
+	 *
+	 * @param source - rows of the image, read in several passes
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param params - Segmentation parameters, with bgPyramidFactor = 1
+	 * @param sink - receiver of the rows of the mask
+	 * @return noise and threshold of the image
+	 */
+	public static Result segment(RowSource source,int width,int height,SegmentationParams params,RowSink sink){
+		if(params == null || source == null || sink == null)
+			throw new MathIllegalArgumentException(LocalizedFormats.NULL_NOT_ALLOWED);
+		if(Math.min(width,height) < 4)//The third difference needs at least 4 rows/columns.
+			throw new NumberIsTooSmallException(Math.min(width,height),4,true);
+		if(params.getBgPyramidFactor() > 1)
+			throw new NumberIsTooLargeException(params.getBgPyramidFactor(),1,true);
+		return Parallel.withParallelism(params.getParallelism(),() -> new Stream(source,width,height,params).run(sink));
+	}
+
+	/**Function sampleError returns the relative error of the noise estimate of a streamed segmentation.
+	 *
+	 */
+	public static double sampleError(SegmentationParams params){
+		return params.getNoiseSampleError() > 0 ? params.getNoiseSampleError() : DEFAULT_SAMPLE_ERROR;
+	}
+
+	/**Passes over the image of the stages shared with LargeImageSegmenter.
+	 *
+	 */
+	interface Pass<T>{
+		/**Function read reads the whole image once, and gives its pixels to values.
+		 *
+		 */
+		void read(T values);
+	}
+
+	/**Grid rows whose foreground is calculated together (see gridRuns).
+	 *
+	 */
+	interface GridRun{
+		/**Function run calculates the grid rows [first,end[, whose differences read the image rows [grid.y0+first*grid.step,endY[.
+		 *
+		 */
+		void run(int first,int end,int endY);
+	}
+
+	/**Function engine returns the engine of the background median of a segmentation read in parts, NO_BACKGROUND without
+	 * background subtraction.
+	 * Same engine as Filter.medianFilter : the range of the padded image is read only if the histogram may be used.
+	 *
+	 * @param params - Segmentation parameters
+	 * @param range - range of the padded image, see HistogramMedian.range
+	 */
+	static int engine(SegmentationParams params,Supplier<float []> range){
+		if(params.isBackgroundSubtraction() == false || params.isPoissonEstimation())
+			return NO_BACKGROUND;
+		return Filter.engine(params.getMedianEngine(),params.getBgKernelWidth(),params.getBgKernelHeight(),range);
+	}
+
+	/**Function backgroundValue returns the median of an image read in passes, as the background of a segmentation without
+	 * background subtraction (see RadixSelect.Selection).
+	 *
+	 * @param nPixels - number of pixels of the image
+	 * @param pass - pass over the image, adding all its pixels to the selection
+	 */
+	static int backgroundValue(long nPixels,Pass<RadixSelect.Selection> pass){
+		RadixSelect.Selection median = new RadixSelect.Selection(nPixels/2+1);
+		do{
+			pass.read(median);
+		}while(median.nextPass());
+		return (int)median.value();
+	}
+
+	/**Function noiseGrid returns the grid of the sampled differences of a segmentation read in parts.
+	 *
+	 */
+	static NoiseEstimator.Grid noiseGrid(int width,int height,SegmentationParams params){
+		NoiseEstimator.Grid grid = NoiseEstimator.grid(width,height,sampleError(params));
+		//The sample is one array.
+		if((long)grid.nCols*grid.nRows > Integer.MAX_VALUE)
+			throw new NumberIsTooLargeException((long)grid.nCols*grid.nRows,Integer.MAX_VALUE,true);
+		return grid;
+	}
+
+	/**Function gridRuns splits the grid rows [rowStart,rowEnd[ in runs : the grid rows closer than 4 rows share
+	 * their image rows, so they are in the same run.
+	 *
+	 */
+	static void gridRuns(NoiseEstimator.Grid grid,int rowStart,int rowEnd,GridRun run){
+		int gridRow = rowStart;
+		while(gridRow < rowEnd){
+			int first = gridRow;
+			int endY = grid.y0 + gridRow*grid.step + 4;
+			gridRow++;
+			while(gridRow < rowEnd && grid.y0 + gridRow*grid.step <= endY){
+				endY = grid.y0 + gridRow*grid.step + 4;
+				gridRow++;
+			}
+			run.run(first,gridRow,endY);
+		}
+	}
+
+	/**Function thresholdIndex returns the index of the count threshold of the image filter of a segmentation
+	 * (see Segmenter.thresholdIndex).
+	 *
+	 */
+	static int thresholdIndex(int width,int height,SegmentationParams params){
+		int imgWidth = params.getImgKernelWidth();
+		int imgHeight = params.getImgKernelHeight();
+		return Segmenter.thresholdIndex(imgWidth*imgHeight,(long)width*height,params.getNseMult(),params.getFpExp());
+	}
+
+	/**State of a streamed segmentation.
+	 *
+	 */
+	private static final class Stream{
+		private final RowSource source;
+		private final int width;
+		private final int height;
+		private final SegmentationParams params;
+		//Engine of the background median, NO_BACKGROUND without background subtraction.
+		private final int engine;
+		//Range of the padded image for the sliding histogram.
+		private float [] range;
+		private int passes;
+
+		Stream(RowSource source,int width,int height,SegmentationParams params){
+			this.source = source;
+			this.width = width;
+			this.height = height;
+			this.params = params;
+			engine = engine(params,() -> range());
+		}
+
+		/**Function range reads the range of the padded image once.
+		 *
+		 */
+		private float [] range(){
+			if(range == null)
+				range = HistogramMedian.range(newPass(params.getBgKernelHeight()),width,height,params.getBgKernelWidth(),
+						params.getBgKernelHeight(),params.getPaddingType());
+			return range;
+		}
+
+		/**Function newPass starts a new pass over the image, keeping the last capacity rows read.
+		 *
+		 */
+		private Lines newPass(int capacity){
+			passes++;
+			return new Lines(source,width,height,capacity);
+		}
+
+		Result run(RowSink sink){
+			/**ESTIMATE BACKGROUND
+			 *
+			 */
+			int bgValue = 0;
+			if(params.isBackgroundSubtraction() == false){
+				float [] row = new float [width];
+				bgValue = backgroundValue((long)width*height,median -> {
+					Lines lines = newPass(1);
+					for(int y = 0; y < height;y++){
+						lines.read(y,row,0);
+						median.add(row,0,width);
+					}
+				});
+			}
+
+			/**ESTIMATE NOISE
+			 *
+			 */
+			//Only the 4 rows of foreground of every row of the grid are calculated.
+			NoiseEstimator.Grid grid = noiseGrid(width,height,params);
+			float [] sample = new float [grid.size()];
+			float [] differenceRows = new float [8*width];
+			int [] sampled = new int [1];
+			Foreground noiseRows = new Foreground((y,fgRow) -> {
+				//Ring of the last 4 rows, written twice so the 4 rows are contiguous.
+				int slot = y % 4;
+				System.arraycopy(fgRow,0,differenceRows,slot*width,width);
+				System.arraycopy(fgRow,0,differenceRows,(slot+4)*width,width);
+				if(y >= 3 && grid.row(y-3) >= 0){
+					for(int col = 0; col < grid.nCols;col++)
+						sample[sampled[0]++] = FiniteDifference.thirdDifferenceAt(differenceRows,width,grid.x0+col*grid.step,(y-3)%4);
+				}
+			});
+			gridRuns(grid,0,grid.nRows,(first,end,endY) -> noiseRows.rows(grid.y0 + first*grid.step,endY));
+			NoiseEstimator.Estimate noiseEstimate = NoiseEstimator.estimate(sample,grid);
+			float noise = noiseEstimate.std/20;
+
+			/**THRESHOLD
+			 *
+			 */
+			double thresh = bgValue + noise * params.getNseMult();
+			int idx = thresholdIndex(width,height,params);
+			Count count = new Count(width,height,params.getImgKernelWidth(),params.getImgKernelHeight(),idx,sink);
+			new Foreground((y,fgRow) -> count.add(y,fgRow,thresh)).rows(0,height);
+			count.finish();
+			return new Result(noise,thresh,noiseEstimate,count.maskPixels,passes);
+		}
+
+		/**Foreground rows of a pass : image rows minus their background medians.
+		 *
+		 */
+		private final class Foreground{
+			private final HistogramMedian.MedianRows output;
+			private final Lines lines;
+			private final float [] fgRow;
+			private final Padding.Rows rows;
+			private final float [][] windows;
+			private final float [] kernel;
+
+			Foreground(HistogramMedian.MedianRows output){
+				this.output = output;
+				int bgWidth = params.getBgKernelWidth();
+				int bgHeight = params.getBgKernelHeight();
+				lines = newPass(engine == NO_BACKGROUND ? 1 : bgHeight+1);
+				fgRow = new float [width];
+				rows = engine == Filter.MEDIAN_NETWORK || engine == Filter.MEDIAN_QUICKSELECT
+						? new Padding.Rows(lines,width,height,bgWidth/2,bgHeight,params.getPaddingType()) : null;
+				windows = engine == Filter.MEDIAN_NETWORK ? NetworkMedian.newWindows(bgWidth,bgHeight) : null;
+				kernel = engine == Filter.MEDIAN_QUICKSELECT ? new float [bgWidth*bgHeight] : null;
+			}
+
+			/**Function rows calculates the foreground of the rows [start,end[ in order. The rows must be after the
+			 * rows of the previous calls.
+			 */
+			void rows(int start,int end){
+				int bgWidth = params.getBgKernelWidth();
+				int bgHeight = params.getBgKernelHeight();
+				if(engine == Filter.MEDIAN_HISTOGRAM){
+					HistogramMedian.filter(lines,width,height,bgWidth,bgHeight,params.getPaddingType(),range,
+							HistogramMedian.DEFAULT_LEVELS,start,end,(y,medians) -> subtract(y,medians));
+					return;
+				}
+				float [] medians = engine == NO_BACKGROUND ? null : new float [width];
+				for(int y = start; y < end;y++){
+					if(engine == Filter.MEDIAN_NETWORK)
+						NetworkMedian.filterRow(rows,y,width,bgWidth,bgHeight,windows,medians,0);
+					else if(engine == Filter.MEDIAN_QUICKSELECT)
+						Filter.medianRow(rows,y,width,bgWidth,bgHeight,kernel,medians,0);
+					subtract(y,medians);
+				}
+			}
+
+			/**Function subtract calculates a row of foreground, and gives it to the output.
+			 *
+			 */
+			private void subtract(int y,float [] medians){
+				lines.read(y,fgRow,0);
+				if(medians != null){
+					for(int col = 0; col < width;col++)
+						fgRow[col] = fgRow[col] - medians[col];
+				}
+				output.row(y,fgRow);
+			}
+		}
+	}
+
+	/**Ring of the last rows read from a RowSource, seen as a Padding.Source.
+	 * The rows are read from the source in increasing order, each once, and the last capacity rows can be read again.
+	 */
+	private static final class Lines implements Padding.Source{
+		private final RowSource source;
+		private final int width;
+		private final int height;
+		private final int capacity;
+		private final float [] ring;
+		//Last row read from the source.
+		private int last = -1;
+
+		Lines(RowSource source,int width,int height,int capacity){
+			this.source = source;
+			this.width = width;
+			this.height = height;
+			this.capacity = capacity;
+			ring = new float [capacity*width];
+		}
+
+		@Override
+		public void read(int y,float [] dest,int destOffset){
+			if(y < 0 || y >= height || y <= last - capacity)
+				throw new OutOfRangeException(y,Math.max(0,last-capacity+1),height-1);
+			//Rows skipped by the pass are never read.
+			for(int row = Math.max(last+1,y-capacity+1); row <= y;row++)
+				source.read(row,ring,(row % capacity)*width);
+			last = Math.max(last,y);
+			System.arraycopy(ring,(y % capacity)*width,dest,destOffset,width);
+		}
+	}
+
+	/**Count of the pixels above the noise in the image filter mask, row by row.
+	 * Same counts and threshold as BitMask.countThreshold : the count of every column is updated with the rows entering
+	 * and leaving the kernel, and the rows are tested with BitMask.KernelThreshold.
+	 */
+	private static final class Count{
+		private final int width;
+		private final int height;
+		private final int radiusY;
+		private final BitMask.KernelThreshold kernel;
+		private final RowSink sink;
+		//Pixels above the noise (0|1) of the last imgKernelHeight+1 rows.
+		private final byte [] above;
+		private final int capacity;
+		private final int [] columnCounts;
+		private final long [] words;
+		private final byte [] maskRow;
+		private int last = -1;
+		long maskPixels;
+
+		Count(int width,int height,int filterWidth,int filterHeight,int idx,RowSink sink){
+			this.width = width;
+			this.height = height;
+			this.radiusY = filterHeight/2;
+			kernel = new BitMask.KernelThreshold(width,height,filterWidth,filterHeight,idx);
+			this.sink = sink;
+			capacity = filterHeight+1;
+			above = new byte [capacity*width];
+			columnCounts = new int [width];
+			words = new long [(width+63) >>> 6];
+			maskRow = new byte [width];
+		}
+
+		/**Function add adds the next row of foreground, and writes the row of the mask whose kernel is complete.
+		 *
+		 */
+		void add(int y,float [] fgRow,double thresh){
+			int offset = (y % capacity)*width;
+			for(int col = 0; col < width;col++){
+				byte value = fgRow[col] > thresh ? (byte)1 : 0;
+				above[offset+col] = value;
+				columnCounts[col] += value;
+			}
+			last = y;
+			if(y - radiusY >= 0)
+				write(y - radiusY);
+		}
+
+		/**Function finish writes the last rows of the mask, whose kernels go past the last row.
+		 *
+		 */
+		void finish(){
+			for(int y = Math.max(0,height-radiusY); y < height;y++)
+				write(y);
+		}
+
+		private void write(int y){
+			//Row leaving the kernel.
+			int leaving = y - radiusY - 1;
+			if(leaving >= 0){
+				int offset = (leaving % capacity)*width;
+				for(int col = 0; col < width;col++)
+					columnCounts[col] -= above[offset+col];
+			}
+			kernel.row(columnCounts,y,0,width,words,0);
+			for(int col = 0; col < width;col++)
+				maskRow[col] = (words[col >>> 6] & (1L << col)) != 0 ? (byte) 255 : 0;
+			for(long word : words)
+				maskPixels += Long.bitCount(word);
+			sink.write(y,maskRow);
+		}
+	}
+}
@@ -0,0 +1,87 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+/**Cache of the false positive threshold indexes (see Segmenter.thresholdIndex).
+ * The threshold index only depends on the mask size, the number of pixels of the image, nseMult and fpExp,
+ * so it is the same for every slice of a stack and for every run with the same parameters. The first call
+ * calculates it and the next ones only read the cache. The cache can be used by many threads at once.
+ *
+ * The expected number of false positives Pr(X > i) * nPixels decreases with i, so the smallest i
+ * with expectedFT[i] <= fpExp is found from the whole tail vector of MathFunction.binoTail, calculated in O(mask size)
+ * with the recurrence of the binomial pmf, instead of one incomplete beta function per index.
+ * @author Jacques Boisvert
+ */
+public class ThresholdTable {
+
+	//Largest number of cached indexes. The cache is emptied when it is full.
+	private final static int MAX_ENTRIES = 4096;
+
+	private final static ConcurrentHashMap<Key,Integer> cache = new ConcurrentHashMap<Key,Integer>();
+
+	/**Parameters of a threshold index.
+	 *
+	 */
+	private static final class Key{
+		private final int avgMaskSize;
+		private final long nPixels;
+		private final double nseMult;
+		private final double fpExp;
+
+		Key(int avgMaskSize,long nPixels,double nseMult,double fpExp){
+			this.avgMaskSize = avgMaskSize;
+			this.nPixels = nPixels;
+			this.nseMult = nseMult;
+			this.fpExp = fpExp;
+		}
+
+		@Override
+		public boolean equals(Object o){
+			if(!(o instanceof Key))
+				return false;
+			Key k = (Key)o;
+			return avgMaskSize == k.avgMaskSize && nPixels == k.nPixels
+					&& Double.doubleToLongBits(nseMult) == Double.doubleToLongBits(k.nseMult)
+					&& Double.doubleToLongBits(fpExp) == Double.doubleToLongBits(k.fpExp);
+		}
+
+		@Override
+		public int hashCode(){
+			int hash = 31*avgMaskSize + Long.hashCode(nPixels);
+			hash = 31*hash + Double.hashCode(nseMult);
+			return 31*hash + Double.hashCode(fpExp);
+		}
+	}
+
+	/**Function thresholdIndex returns the threshold index of the parameters, from the cache if possible.
+	 *
+	 * @param avgMaskSize - Number of pixels in the image filter mask
+	 * @param nPixels - Number of pixels in the image
+	 * @param nseMult - Noise multiplicator
+	 * @param fpExp - Target maximum expected number of false positives per image.
+	 * @return idx - 0 if no number of pixels gives less than fpExp false positives.
+	 */
+	public static int thresholdIndex(int avgMaskSize,long nPixels,double nseMult,double fpExp){
+		Key key = new Key(avgMaskSize,nPixels,nseMult,fpExp);
+		Integer idx = cache.get(key);
+		if(idx != null)
+			return idx;
+		if(cache.size() >= MAX_ENTRIES)
+			cache.clear();
+		return cache.computeIfAbsent(key,k -> compute(avgMaskSize,nPixels,nseMult,fpExp));
+	}
+
+	/**Function compute calculates the threshold index without the cache.
+	 * See thresholdIndex.
+	 */
+	static int compute(int avgMaskSize,long nPixels,double nseMult,double fpExp){
+		double pSinglePixel = 1 - MathFunction.normCDF(nseMult,0,1);
+		int idx = MathFunction.binoTailInverse(avgMaskSize,pSinglePixel,nPixels,fpExp);
+		return idx < avgMaskSize ? idx : 0;
+	}
+
+	/**Function clear empties the cache.
+	 *
+	 */
+	public static void clear(){
+		cache.clear();
+	}
+}
@@ -0,0 +1,312 @@
+import java.util.Arrays;
+
+/**Tile by tile execution of the per-pixel stages of the segmentation (see Segmenter).
+ * Without tiles, every stage sweeps the whole image before the next one : the background image is written, then read
+ * again with the image to subtract it, and the foreground is read again to count the pixels above the noise. A 4k float
+ * image (64 MB) doesn't stay in the caches between the stages. Here the chain of stages is run on a tile and its halo
+ * before moving to the next tile :
+ *  1. FOREGROUND : the medians of the rows of the tile are calculated from the padded rows of the tile and its halo of
+ *     bgKernel/2 pixels (see Padding.Rows), and subtracted from the image as soon as they are calculated, so the
+ *     background image is never created.
+ *  2. The noise needs the foreground of the whole image, it is estimated between the 2 passes as in Segmenter.
+ *  3. COUNT : the pixels of the tile and its halo of imgKernel/2 pixels are compared with the threshold and counted in
+ *     the image filter mask of every pixel of the tile, the pixels above the noise are never stored.
+ * The tiles are processed in parallel (see Parallel). The medians are calculated with the same engine (and the same bins
+ * for the sliding histogram) as Filter.medianFilter on the whole image, and the counts are the ones of BitMask.countThreshold,
+ * so the masks are the same as without tiles.
+ *
+ * TILE SIZE
+ * TILE_AUTO : square tiles whose input (the tile and its halo) and output fit in half of the level 2 cache (see CacheInfo),
+ * 		side = sqrt(L2/16) pixels, rounded down to a multiple of 256.
+ * > 0 : tiles of tileSize x tileSize pixels.
+ * The width of the tiles is rounded up to a multiple of 256 : 2 tiles never write the same word of the mask (see BitMask),
+ * and the rows of the tiles are whole chunks of NetworkMedian.
+ * @author Jacques Boisvert
+ */
+public class TiledSegmenter {
+
+	//Every stage on the whole image.
+	public final static int TILE_NONE = 0;
+	//Tiles sized from the level 2 cache.
+	public final static int TILE_AUTO = -1;
+	//The tile widths are multiples of the chunks of NetworkMedian (256 pixels), which are whole words of BitMask (64 pixels).
+	private final static int ALIGN = NetworkMedian.CHUNK;
+
+	/**Function isTiled returns true if the background of an image is calculated tile by tile with these parameters.
+	 * The pyramid background and the Poisson estimation use the whole image.
+	 */
+	public static boolean isTiled(SegmentationParams params){
+		return params.getTileSize() != TILE_NONE && params.getBgPyramidFactor() == 1 && !params.isPoissonEstimation();
+	}
+
+	/**Function tileSize returns the side of the tiles, in pixels.
+	 *
+	 * @param tileSize - TILE_AUTO or a size > 0
+	 * @return tile side
+	 */
+	public static int tileSize(int tileSize){
+		if(tileSize > 0)
+			return tileSize;
+		long side = (long)Math.sqrt(CacheInfo.getL2() / 16.0);
+		return (int)Math.max(ALIGN,side / ALIGN * ALIGN);
+	}
+
+	/**Function foreground calculates the foreground (image minus its median background) tile by tile.
+	 *
+	 * @param pix - 32 bits float pixel array of the image, not modified
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param params - Segmentation parameters, the background kernel, padding, engine and tile size are used.
+	 * @param fgPix - array receiving the foreground
+	 * @param background - array receiving the background, or null
+	 */
+	public static void foreground(float [] pix,int width,int height,SegmentationParams params,float [] fgPix,float [] background){
+		if(pix.length != width*height)
+			throw new DimensionMismatchException(pix.length,width*height);
+		int filterWidth = params.getBgKernelWidth();
+		int filterHeight = params.getBgKernelHeight();
+		int paddingType = params.getPaddingType();
+		//Same engine and bins as Filter.medianFilter, the range of the image is read once.
+		float [][] range = new float [1][];
+		int engine = Filter.engine(params.getMedianEngine(),filterWidth,filterHeight,
+				() -> range[0] = HistogramMedian.range(pix,width,height,filterWidth,filterHeight,paddingType));
+		Tiles tiles = new Tiles(width,height,tileSize(params.getTileSize()));
+		Parallel.forBands(tiles.count,1,(start,end) -> {
+			Medians medians = new Medians(engine,range[0],params,tiles.tileWidth);
+			for(int tile = start; tile < end;tile++){
+				int x0 = tiles.x0(tile);
+				int x1 = tiles.x1(tile);
+				//Subtract the medians of a row of the tile from the image.
+				medians.rows(pix,width,height,x0,x1,tiles.y0(tile),tiles.y1(tile),(row,rowMedians) -> {
+					int offset = row*width + x0;
+					for(int i = 0; i < x1-x0;i++)
+						fgPix[offset+i] = pix[offset+i] - rowMedians[i];
+					if(background != null)
+						System.arraycopy(rowMedians,0,background,offset,x1-x0);
+				});
+			}
+		});
+	}
+
+	/**Function countThreshold returns the mask of the kernels containing enough pixels higher than thresh, tile by tile.
+	 * Same mask as BitMask.threshold(fgPix,width,height,thresh).countThreshold(filterWidth,filterHeight,idx).
+	 * @param fgPix - 32 bits float pixel array, not modified
+	 * @param width - Image width
+	 * @param height - Image height
+	 * @param thresh - pixel threshold
+	 * @param filterWidth - Filter width
+	 * @param filterHeight - Filter height
+	 * @param idx - Number of pixels higher than thresh in a filterWidth x filterHeight kernel to exceed.
+	 * @param tileSize - TILE_AUTO or a size > 0
+	 * @return mask of the kernels
+	 */
+	public static BitMask countThreshold(float [] fgPix,int width,int height,double thresh,int filterWidth,int filterHeight,int idx,int tileSize){
+		if(fgPix.length != width*height)
+			throw new DimensionMismatchException(fgPix.length,width*height);
+		BitMask mask = new BitMask(width,height);
+		Tiles tiles = new Tiles(width,height,tileSize(tileSize));
+		Parallel.forBands(tiles.count,1,(start,end) -> {
+			Counter counter = new Counter(width,height,filterWidth,filterHeight,idx,tiles.tileWidth);
+			for(int tile = start; tile < end;tile++)
+				counter.count(fgPix,width,0,0,thresh,tiles.x0(tile),tiles.x1(tile),tiles.y0(tile),tiles.y1(tile),mask,0,0);
+		});
+		return mask;
+	}
+
+	/**Medians of the rows of a block of columns of an image, with an engine of Filter.medianFilter. Used by 1 thread.
+	 * The kernels of the block are padded as in the whole image when the borders of pix are the borders of the image,
+	 * so a block of an image can be filtered from a part of the image containing the block and its halo of filterWidth/2
+	 * columns and filterHeight/2 rows (cut at the borders of the image).
+	 */
+	static final class Medians{
+		private final int engine;
+		private final float [] range;
+		private final int filterWidth;
+		private final int filterHeight;
+		private final int paddingType;
+		private final float [] medians;
+		private final float [][] windows;
+		private final float [] kernel;
+
+		/**Create the buffers of the medians of blocks of at most maxWidth columns.
+		 *
+		 * @param engine - MEDIAN_QUICKSELECT, MEDIAN_HISTOGRAM or MEDIAN_NETWORK (see Filter.engine)
+		 * @param range - range of the padded image for MEDIAN_HISTOGRAM (see HistogramMedian.range), otherwise not used
+		 * @param params - Segmentation parameters, the background kernel and the padding are used.
+		 * @param maxWidth - largest number of columns of a block
+		 */
+		Medians(int engine,float [] range,SegmentationParams params,int maxWidth){
+			this.engine = engine;
+			this.range = range;
+			filterWidth = params.getBgKernelWidth();
+			filterHeight = params.getBgKernelHeight();
+			paddingType = params.getPaddingType();
+			medians = new float [maxWidth];
+			windows = engine == Filter.MEDIAN_NETWORK ? NetworkMedian.newWindows(filterWidth,filterHeight) : null;
+			kernel = engine == Filter.MEDIAN_QUICKSELECT ? new float [filterWidth*filterHeight] : null;
+		}
+
+		/**Function rows calculates the medians of the columns [x0,x1[ of the rows [rowStart,rowEnd[ of pix.
+		 *
+		 * @param pix - 32 bits float pixel array, not modified
+		 * @param width - width of pix
+		 * @param height - height of pix
+		 * @param x0 - First column
+		 * @param x1 - Last column (exclusive)
+		 * @param rowStart - First row
+		 * @param rowEnd - Last row (exclusive)
+		 * @param output - receiver of the x1-x0 medians of every row, in order
+		 */
+		void rows(float [] pix,int width,int height,int x0,int x1,int rowStart,int rowEnd,HistogramMedian.MedianRows output){
+			if(engine == Filter.MEDIAN_HISTOGRAM){
+				HistogramMedian.filter(pix,width,height,x0,x1,filterWidth,filterHeight,paddingType,range,
+						HistogramMedian.DEFAULT_LEVELS,rowStart,rowEnd,output);
+				return;
+			}
+			Padding.Rows rows = new Padding.Rows(pix,width,height,x0,x1,filterWidth/2,filterHeight,paddingType);
+			for(int row = rowStart; row < rowEnd;row++){
+				if(engine == Filter.MEDIAN_NETWORK)
+					NetworkMedian.filterRow(rows,row,x1-x0,filterWidth,filterHeight,windows,medians,0);
+				else
+					Filter.medianRow(rows,row,x1-x0,filterWidth,filterHeight,kernel,medians,0);
+				output.row(row,medians);
+			}
+		}
+	}
+
+	/**Count of the pixels higher than a threshold in the image filter mask of the pixels of a tile, with the test of
+	 * BitMask.countThreshold (see BitMask.KernelThreshold). Used by 1 thread.
+	 * The foreground only has to cover the tile and its halo of filterWidth/2 columns and filterHeight/2 rows (cut at the
+	 * borders of the image), so a tile of a large image can be counted from a part of its foreground.
+	 */
+	static final class Counter{
+		private final int imageWidth;
+		private final int imageHeight;
+		private final int radiusX;
+		private final int radiusY;
+		private final int filterHeight;
+		private final BitMask.KernelThreshold kernel;
+		private final int [] columnCounts;
+		//Result of the rows of a tile.
+		private final long [] words;
+		//Pixels higher than thresh (0|1) of the filterHeight rows of the kernel, row y in line y%filterHeight :
+		//every pixel is compared once, and removed from the counts with the same value.
+		private final byte [][] lines;
+
+		/**Create the counts of tiles of at most maxWidth columns.
+		 *
+		 * @param imageWidth - Image width
+		 * @param imageHeight - Image height
+		 * @param filterWidth - Filter width
+		 * @param filterHeight - Filter height
+		 * @param idx - Number of pixels higher than thresh in a filterWidth x filterHeight kernel to exceed.
+		 * @param maxWidth - largest number of columns of a tile
+		 */
+		Counter(int imageWidth,int imageHeight,int filterWidth,int filterHeight,int idx,int maxWidth){
+			this.imageWidth = imageWidth;
+			this.imageHeight = imageHeight;
+			radiusX = filterWidth/2;
+			radiusY = filterHeight/2;
+			this.filterHeight = filterHeight;
+			kernel = new BitMask.KernelThreshold(imageWidth,imageHeight,filterWidth,filterHeight,idx);
+			columnCounts = new int [maxWidth + 2*radiusX];
+			words = new long [(maxWidth+63) >>> 6];
+			lines = new byte [filterHeight][maxWidth + 2*radiusX];
+		}
+
+		/**Function count sets the pixels of the tile [x0,x1[ x [y0,y1[ whose kernel contains enough pixels higher than thresh.
+		 *
+		 * @param fgPix - foreground of the part of the image whose first pixel is (fgX,fgY), not modified
+		 * @param fgWidth - width of the part of the image
+		 * @param fgX - column of the image of the first pixel of fgPix
+		 * @param fgY - row of the image of the first pixel of fgPix
+		 * @param thresh - pixel threshold
+		 * @param x0 - First column of the tile
+		 * @param x1 - Last column of the tile (exclusive)
+		 * @param y0 - First row of the tile
+		 * @param y1 - Last row of the tile (exclusive)
+		 * @param mask - mask receiving the tile, its words are replaced
+		 * @param maskX - column of the image of the first pixel of mask, x0-maskX is a multiple of 64
+		 * @param maskY - row of the image of the first pixel of mask
+		 */
+		void count(float [] fgPix,int fgWidth,int fgX,int fgY,double thresh,int x0,int x1,int y0,int y1,BitMask mask,int maskX,int maskY){
+			//Columns of the tile and its halo : column x is at index x-first of columnCounts.
+			int first = kernel.firstColumn(x0);
+			int last = Math.min(imageWidth,x1+radiusX);
+			int fgOffset = first - fgX - fgY*fgWidth;
+			Arrays.fill(columnCounts,0);
+			for(int row = Math.max(y0-radiusY,0); row < Math.min(y0+radiusY,imageHeight-1)+1;row++)
+				addRow(lines[row % filterHeight],fgPix,fgOffset + row*fgWidth,last-first,thresh);
+			for(int row = y0; row < y1;row++){
+				if(row > y0){
+					if(row-radiusY-1 >= 0)
+						removeRow(lines[(row-radiusY-1) % filterHeight],last-first);
+					if(row+radiusY < imageHeight)
+						addRow(lines[(row+radiusY) % filterHeight],fgPix,fgOffset + (row+radiusY)*fgWidth,last-first,thresh);
+				}
+				kernel.row(columnCounts,row,x0,x1,words,0);
+				for(int w = 0; w < ((x1-x0+63) >>> 6);w++)
+					mask.setWord(x0-maskX + (w << 6),row-maskY,words[w]);
+			}
+		}
+
+		/**Function addRow adds the pixels of a row higher than thresh to the column counts, and keeps them in line.
+		 *
+		 */
+		private void addRow(byte [] line,float [] pix,int offset,int length,double thresh){
+			for(int i = 0; i < length;i++){
+				byte above = (byte)(pix[offset+i] > thresh ? 1 : 0);
+				line[i] = above;
+				columnCounts[i] += above;
+			}
+		}
+
+		/**Function removeRow removes the pixels of a row kept by addRow from the column counts.
+		 *
+		 */
+		private void removeRow(byte [] line,int length){
+			for(int i = 0; i < length;i++)
+				columnCounts[i] -= line[i];
+		}
+	}
+
+	/**Division of an image in tiles, row by row of tiles.
+	 * The tile widths are multiples of 256 (see TILE SIZE).
+	 */
+	static final class Tiles{
+		final int width;
+		final int height;
+		final int tileWidth;
+		final int tileHeight;
+		final int nX;
+		final int count;
+
+		Tiles(int width,int height,int side){
+			this.width = width;
+			this.height = height;
+			tileWidth = Math.min((side + ALIGN-1) / ALIGN * ALIGN,width);
+			tileHeight = Math.min(side,height);
+			nX = (width + tileWidth-1) / tileWidth;
+			long tiles = (long)nX * ((height + tileHeight-1) / tileHeight);
+			if(tiles > Integer.MAX_VALUE)
+				throw new NumberIsTooLargeException(tiles,Integer.MAX_VALUE,true);
+			count = (int)tiles;
+		}
+
+		int x0(int tile){
+			return (tile % nX) * tileWidth;
+		}
+
+		int x1(int tile){
+			return Math.min(x0(tile) + tileWidth,width);
+		}
+
+		int y0(int tile){
+			return (tile / nX) * tileHeight;
+		}
+
+		int y1(int tile){
+			return Math.min(y0(tile) + tileHeight,height);
+		}
+	}
+}